@@ -0,0 +1,196 @@
+package org.reactivecouchbase.json;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+// Fields of small objects : a Shape, holding the keys in insertion order and usually shared with all the
+// objects that have the same keys, and an array of values. A lot smaller than a HashMap with its table and
+// its nodes, and a lookup is an index lookup in the shape. Edits that make the map bigger than MAX_SIZE switch
+// to a TrieFieldMap.
+final class ArrayFieldMap extends FieldMap {
+
+    static final int MAX_SIZE = 32;
+
+    static final ArrayFieldMap EMPTY = new ArrayFieldMap(Shape.EMPTY, new JsValue[0]);
+
+    private final Shape shape;
+    private final JsValue[] values;
+
+    // the values array is owned by the map, it has the size of the shape
+    ArrayFieldMap(Shape shape, JsValue[] values) {
+        this.shape = shape;
+        this.values = values;
+    }
+
+    // used by JsPair : pairs are short lived, they don't get a shared shape
+    static ArrayFieldMap of(String key, JsValue value) {
+        return new ArrayFieldMap(Shape.single(key), new JsValue[]{value});
+    }
+
+    static ArrayFieldMap copyOf(Map<String, ? extends JsValue> map) {
+        return copyOf(map, true);
+    }
+
+    // copy whose shape is neither shared nor cached, for maps whose keys come from edits rather than from
+    // objects built the same way
+    static ArrayFieldMap copyOfUnshared(Map<String, ? extends JsValue> map) {
+        return copyOf(map, false);
+    }
+
+    private static ArrayFieldMap copyOf(Map<String, ? extends JsValue> map, boolean shared) {
+        String[] keys = new String[map.size()];
+        JsValue[] values = new JsValue[keys.length];
+        int i = 0;
+        for (Entry<String, ? extends JsValue> entry : map.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i++] = entry.getValue();
+        }
+        return new ArrayFieldMap(shared ? Shape.of(keys, keys.length) : Shape.unshared(keys), values);
+    }
+
+    Shape shape() {
+        return shape;
+    }
+
+    // the values, in the order of the keys of the shape. Must not be modified
+    JsValue[] valueArray() {
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public JsValue get(Object key) {
+        int i = shape.indexOf(key);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return shape.indexOf(key) >= 0;
+    }
+
+    @Override
+    FieldMap plus(String key, JsValue value) {
+        int i = shape.indexOf(key);
+        if (i >= 0) {
+            if (values[i] == value) {
+                return this;
+            }
+            JsValue[] newValues = values.clone();
+            newValues[i] = value;
+            return new ArrayFieldMap(shape, newValues);
+        }
+        if (values.length == MAX_SIZE) {
+            return TrieFieldMap.copyOf(this).plus(key, value);
+        }
+        JsValue[] newValues = Arrays.copyOf(values, values.length + 1);
+        newValues[values.length] = value;
+        return new ArrayFieldMap(shape.with(key), newValues);
+    }
+
+    @Override
+    FieldMap plusAll(Map<String, ? extends JsValue> map) {
+        if (map.isEmpty()) {
+            return this;
+        }
+        if (values.length == 0 && map instanceof FieldMap) {
+            return (FieldMap) map;
+        }
+        FieldsBuilder builder = new FieldsBuilder(this);
+        builder.putAll(map);
+        Map<String, JsValue> fields = builder.build();
+        return fields instanceof FieldMap ? (FieldMap) fields : TrieFieldMap.copyOf(fields);
+    }
+
+    @Override
+    FieldMap minus(String key) {
+        int i = shape.indexOf(key);
+        if (i < 0) {
+            return this;
+        }
+        if (values.length == 1) {
+            return EMPTY;
+        }
+        JsValue[] newValues = new JsValue[values.length - 1];
+        System.arraycopy(values, 0, newValues, 0, i);
+        System.arraycopy(values, i + 1, newValues, i, newValues.length - i);
+        return new ArrayFieldMap(shape.without(i), newValues);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super JsValue> action) {
+        String[] keys = shape.keys;
+        for (int i = 0; i < keys.length; i++) {
+            action.accept(keys[i], values[i]);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof ArrayFieldMap && ((ArrayFieldMap) o).shape == shape) {
+            return Arrays.equals(values, ((ArrayFieldMap) o).values);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        String[] keys = shape.keys;
+        int hash = 0;
+        for (int i = 0; i < keys.length; i++) {
+            hash += Objects.hashCode(keys[i]) ^ Objects.hashCode(values[i]);
+        }
+        return hash;
+    }
+
+    @Override
+    public Set<Entry<String, JsValue>> entrySet() {
+        return new AbstractSet<Entry<String, JsValue>>() {
+            @Override
+            public Iterator<Entry<String, JsValue>> iterator() {
+                return new Iterator<Entry<String, JsValue>>() {
+                    private int position = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < values.length;
+                    }
+
+                    @Override
+                    public Entry<String, JsValue> next() {
+                        if (position >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = position++;
+                        return new SimpleImmutableEntry<>(shape.keys[i], values[i]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Entry)) {
+                    return false;
+                }
+                Entry<?, ?> entry = (Entry<?, ?>) o;
+                int i = shape.indexOf(entry.getKey());
+                return i >= 0 && Objects.equals(values[i], entry.getValue());
+            }
+        };
+    }
+}
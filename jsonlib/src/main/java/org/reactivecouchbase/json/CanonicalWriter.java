@@ -0,0 +1,213 @@
+package org.reactivecouchbase.json;
+
+import org.reactivecouchbase.common.Throwables;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// Canonical json text, the same for all the equal documents whatever the order of their fields or the
+// scale of their numbers, for content hashing. Close to RFC 8785 :
+// - keys sorted by code point, only the key array of each object is sorted, the tree isn't copied
+// - numbers without trailing zeros, in plain notation for magnitudes from 1e-6 to below 1e21 and in
+//   scientific notation (1e+21, 1.5e-7) otherwise, like ECMAScript writes doubles
+// - only quotes, backslashes and control characters escaped, with lowercase hex digits
+// - undefined written as null
+// When writing to a stream, the text is encoded and flushed to it every FLUSH_CHARS chars or so, between
+// two values, so the whole document is never held in memory.
+final class CanonicalWriter {
+
+    private static final int FLUSH_CHARS = 8 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Comparator<String> CODE_POINT_ORDER = (a, b) -> {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                return codePointOrder(ca) - codePointOrder(cb);
+            }
+        }
+        return a.length() - b.length();
+    };
+
+    private final StringBuilder builder;
+    // null when the text is returned as a String
+    private final OutputStream stream;
+
+    private CanonicalWriter(StringBuilder builder, OutputStream stream) {
+        this.builder = builder;
+        this.stream = stream;
+    }
+
+    static String write(JsValue value) {
+        OutputBuffers.BufferWriter out = OutputBuffers.acquire();
+        try {
+            new CanonicalWriter(out.builder, null).writeValue(value);
+            return out.toString();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            OutputBuffers.release(out);
+        }
+    }
+
+    // UTF-8 bytes of the canonical text, the stream is not closed
+    static void write(JsValue value, OutputStream stream) throws IOException {
+        OutputBuffers.BufferWriter out = OutputBuffers.acquire();
+        try {
+            CanonicalWriter writer = new CanonicalWriter(out.builder, stream);
+            writer.writeValue(value);
+            writer.flush();
+        } finally {
+            OutputBuffers.release(out);
+        }
+    }
+
+    // only called between two values, so a surrogate pair is never split
+    private void flush() throws IOException {
+        stream.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+        builder.setLength(0);
+    }
+
+    private void written() throws IOException {
+        if (stream != null && builder.length() >= FLUSH_CHARS) {
+            flush();
+        }
+    }
+
+    private void writeValue(JsValue value) throws IOException {
+        if (value instanceof JsObject) {
+            writeObject(((JsObject) value).values);
+        } else if (value instanceof JsArray) {
+            List<JsValue> values = ((JsArray) value).values;
+            builder.append('[');
+            boolean first = true;
+            for (JsValue element : values) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                writeValue(element);
+                written();
+            }
+            builder.append(']');
+        } else if (value instanceof JsString) {
+            writeString(((JsString) value).value);
+        } else if (value instanceof JsNumber) {
+            writeNumber((JsNumber) value);
+        } else if (value instanceof JsBoolean) {
+            builder.append(Boolean.TRUE.equals(((JsBoolean) value).value) ? "true" : "false");
+        } else {
+            builder.append("null");
+        }
+    }
+
+    private void writeObject(Map<String, JsValue> values) throws IOException {
+        String[] keys = values.keySet().toArray(new String[values.size()]);
+        Arrays.sort(keys, CODE_POINT_ORDER);
+        builder.append('{');
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            writeString(keys[i]);
+            builder.append(':');
+            writeValue(values.get(keys[i]));
+            written();
+        }
+        builder.append('}');
+    }
+
+    // UTF-16 units compare in code point order once surrogates are moved above the rest of the BMP
+    private static int codePointOrder(char c) {
+        if (c < 0xD800) {
+            return c;
+        }
+        return c >= 0xE000 ? c - 0x800 : c + 0x2000;
+    }
+
+    private void writeString(String value) {
+        builder.append('"');
+        int length = value.length();
+        int run = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            builder.append(value, run, i).append('\\');
+            switch (c) {
+                case '"':
+                case '\\':
+                    builder.append(c);
+                    break;
+                case '\b':
+                    builder.append('b');
+                    break;
+                case '\t':
+                    builder.append('t');
+                    break;
+                case '\f':
+                    builder.append('f');
+                    break;
+                case '\n':
+                    builder.append('n');
+                    break;
+                case '\r':
+                    builder.append('r');
+                    break;
+                default:
+                    builder.append("u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+            run = i + 1;
+        }
+        builder.append(value, run, length).append('"');
+    }
+
+    private void writeNumber(JsNumber number) {
+        if (number.isLong() && Math.abs(number.value.longValue()) < 1_000_000_000_000_000L) {
+            builder.append(number.value.longValue());
+            return;
+        }
+        BigDecimal value = number.value;
+        if (value.signum() == 0) {
+            builder.append('0');
+            return;
+        }
+        BigDecimal stripped = value.stripTrailingZeros();
+        if (stripped.signum() < 0) {
+            builder.append('-');
+        }
+        String digits = stripped.unscaledValue().abs().toString();
+        int k = digits.length();
+        // position of the decimal point relative to the first digit
+        long n = (long) k - stripped.scale();
+        if (k <= n && n <= 21) {
+            builder.append(digits);
+            for (long i = k; i < n; i++) {
+                builder.append('0');
+            }
+        } else if (0 < n && n <= 21) {
+            builder.append(digits, 0, (int) n).append('.').append(digits, (int) n, k);
+        } else if (-6 < n && n <= 0) {
+            builder.append("0.");
+            for (long i = n; i < 0; i++) {
+                builder.append('0');
+            }
+            builder.append(digits);
+        } else {
+            builder.append(digits.charAt(0));
+            if (k > 1) {
+                builder.append('.').append(digits, 1, k);
+            }
+            builder.append('e').append(n - 1 >= 0 ? "+" : "-").append(Math.abs(n - 1));
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package org.reactivecouchbase.json;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+// Immutable list of the elements of a JsArray, stored as a rope : chunks of up to 32 elements at the leaves
+// of an AVL balanced binary tree. Adding an element at either end, concatenating and slicing copy a path of
+// the tree (and at most one chunk) and share everything else with the original list, so they are O(log n).
+// get(int) is O(log n) too, that's why the list is not RandomAccess and is better walked with its iterator.
+// With 32 element chunks, the tree of a 100k elements list is 12 to 17 levels deep : that slower random access
+// on edited arrays is accepted, a wider fan-out would copy more on every edit, which is what the rope is for.
+final class ElementList extends AbstractList<JsValue> {
+
+    static final ElementList EMPTY = new ElementList(null);
+
+    private static final int CHUNK_SIZE = 32;
+
+    // null when the list is empty
+    private final Node root;
+
+    private ElementList(Node root) {
+        this.root = root;
+    }
+
+    static ElementList of(List<? extends JsValue> values) {
+        if (values instanceof ElementList) {
+            return (ElementList) values;
+        }
+        if (values.isEmpty()) {
+            return EMPTY;
+        }
+        JsValue[] array = values.toArray(new JsValue[0]);
+        Node[] leaves = new Node[(array.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = new Leaf(Arrays.copyOfRange(array, i * CHUNK_SIZE, Math.min(array.length, (i + 1) * CHUNK_SIZE)));
+        }
+        return new ElementList(balanced(leaves, 0, leaves.length));
+    }
+
+    private static Node balanced(Node[] leaves, int from, int to) {
+        if (to - from == 1) {
+            return leaves[from];
+        }
+        int middle = (from + to) >>> 1;
+        return new Concat(balanced(leaves, from, middle), balanced(leaves, middle, to));
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    @Override
+    public JsValue get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = root;
+        while (node instanceof Concat) {
+            Concat concat = (Concat) node;
+            if (index < concat.left.size) {
+                node = concat.left;
+            } else {
+                index -= concat.left.size;
+                node = concat.right;
+            }
+        }
+        return ((Leaf) node).values[index];
+    }
+
+    ElementList plus(JsValue value) {
+        Leaf leaf = new Leaf(new JsValue[]{value});
+        return new ElementList(root == null ? leaf : appendLeaf(root, leaf));
+    }
+
+    ElementList plusFirst(JsValue value) {
+        Leaf leaf = new Leaf(new JsValue[]{value});
+        return new ElementList(root == null ? leaf : prependLeaf(root, leaf));
+    }
+
+    ElementList concat(List<? extends JsValue> values) {
+        ElementList other = of(values);
+        if (other.root == null) {
+            return this;
+        }
+        if (root == null) {
+            return other;
+        }
+        // small lists are merged with the chunk at the seam, so that concatenating small arrays one after the
+        // other doesn't end up with a tree of tiny chunks
+        if (other.root.size <= CHUNK_SIZE) {
+            return new ElementList(appendLeaf(root, other.root.flatten()));
+        }
+        if (root.size <= CHUNK_SIZE) {
+            return new ElementList(prependLeaf(other.root, root.flatten()));
+        }
+        return new ElementList(join(root, other.root));
+    }
+
+    // elements from (inclusive) to (exclusive)
+    ElementList slice(int from, int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + size());
+        }
+        if (from == to) {
+            return EMPTY;
+        }
+        if (from == 0 && to == size()) {
+            return this;
+        }
+        return new ElementList(drop(take(root, to), from));
+    }
+
+    @Override
+    public List<JsValue> subList(int fromIndex, int toIndex) {
+        return slice(fromIndex, toIndex);
+    }
+
+    @Override
+    public Iterator<JsValue> iterator() {
+        return new ElementIterator(root);
+    }
+
+    @Override
+    public void forEach(Consumer<? super JsValue> action) {
+        if (root != null) {
+            root.forEach(action);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof List) || ((List<?>) o).size() != size()) {
+            return false;
+        }
+        Iterator<?> others = ((List<?>) o).iterator();
+        for (JsValue value : this) {
+            Object other = others.next();
+            if (value == null ? other != null : !value.equals(other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    private static Node appendLeaf(Node node, Leaf leaf) {
+        if (node instanceof Concat) {
+            Concat concat = (Concat) node;
+            return join(concat.left, appendLeaf(concat.right, leaf));
+        }
+        Leaf last = (Leaf) node;
+        if (last.size + leaf.size <= CHUNK_SIZE) {
+            JsValue[] values = Arrays.copyOf(last.values, last.size + leaf.size);
+            System.arraycopy(leaf.values, 0, values, last.size, leaf.size);
+            return new Leaf(values);
+        }
+        return new Concat(last, leaf);
+    }
+
+    private static Node prependLeaf(Node node, Leaf leaf) {
+        if (node instanceof Concat) {
+            Concat concat = (Concat) node;
+            return join(prependLeaf(concat.left, leaf), concat.right);
+        }
+        Leaf first = (Leaf) node;
+        if (first.size + leaf.size <= CHUNK_SIZE) {
+            JsValue[] values = Arrays.copyOf(leaf.values, first.size + leaf.size);
+            System.arraycopy(first.values, 0, values, leaf.size, first.size);
+            return new Leaf(values);
+        }
+        return new Concat(leaf, first);
+    }
+
+    // first n elements of the node, null if n is 0
+    private static Node take(Node node, int n) {
+        if (n == 0) {
+            return null;
+        }
+        if (n == node.size) {
+            return node;
+        }
+        if (node instanceof Leaf) {
+            return new Leaf(Arrays.copyOf(((Leaf) node).values, n));
+        }
+        Concat concat = (Concat) node;
+        if (n <= concat.left.size) {
+            return take(concat.left, n);
+        }
+        return join(concat.left, take(concat.right, n - concat.left.size));
+    }
+
+    // the node without its first n elements, null if nothing is left
+    private static Node drop(Node node, int n) {
+        if (n == 0) {
+            return node;
+        }
+        if (n == node.size) {
+            return null;
+        }
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            return new Leaf(Arrays.copyOfRange(leaf.values, n, leaf.size));
+        }
+        Concat concat = (Concat) node;
+        if (n >= concat.left.size) {
+            return drop(concat.right, n - concat.left.size);
+        }
+        return join(drop(concat.left, n), concat.right);
+    }
+
+    // concatenation of two balanced trees, the taller one is walked down to the height of the other one and
+    // the path is rebalanced on the way back. Either node can be null
+    private static Node join(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.height > right.height + 1) {
+            Concat concat = (Concat) left;
+            return balance(concat.left, join(concat.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Concat concat = (Concat) right;
+            return balance(join(left, concat.left), concat.right);
+        }
+        return new Concat(left, right);
+    }
+
+    // AVL rotations, the heights of left and right differ by 2 at most
+    private static Node balance(Node left, Node right) {
+        if (left.height > right.height + 1) {
+            Concat l = (Concat) left;
+            if (l.left.height >= l.right.height) {
+                return new Concat(l.left, new Concat(l.right, right));
+            }
+            Concat lr = (Concat) l.right;
+            return new Concat(new Concat(l.left, lr.left), new Concat(lr.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Concat r = (Concat) right;
+            if (r.right.height >= r.left.height) {
+                return new Concat(new Concat(left, r.left), r.right);
+            }
+            Concat rl = (Concat) r.left;
+            return new Concat(new Concat(left, rl.left), new Concat(rl.right, r.right));
+        }
+        return new Concat(left, right);
+    }
+
+    private abstract static class Node {
+
+        final int size;
+        final int height;
+
+        Node(int size, int height) {
+            this.size = size;
+            this.height = height;
+        }
+
+        abstract void forEach(Consumer<? super JsValue> action);
+
+        // only called on nodes of CHUNK_SIZE elements at most
+        abstract Leaf flatten();
+    }
+
+    private static final class Leaf extends Node {
+
+        final JsValue[] values;
+
+        Leaf(JsValue[] values) {
+            super(values.length, 0);
+            this.values = values;
+        }
+
+        @Override
+        void forEach(Consumer<? super JsValue> action) {
+            for (JsValue value : values) {
+                action.accept(value);
+            }
+        }
+
+        @Override
+        Leaf flatten() {
+            return this;
+        }
+    }
+
+    private static final class Concat extends Node {
+
+        final Node left;
+        final Node right;
+
+        Concat(Node left, Node right) {
+            super(left.size + right.size, Math.max(left.height, right.height) + 1);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        void forEach(Consumer<? super JsValue> action) {
+            left.forEach(action);
+            right.forEach(action);
+        }
+
+        @Override
+        Leaf flatten() {
+            JsValue[] values = new JsValue[size];
+            int[] index = new int[1];
+            forEach(value -> values[index[0]++] = value);
+            return new Leaf(values);
+        }
+    }
+
+    // walks the leaves from left to right, the stack holds the right sides still to visit
+    private static final class ElementIterator implements Iterator<JsValue> {
+
+        private final Node[] stack;
+        private int depth = 0;
+        private JsValue[] chunk;
+        private int position = 0;
+
+        private ElementIterator(Node root) {
+            this.stack = new Node[root == null ? 0 : root.height + 1];
+            if (root != null) {
+                descend(root);
+            } else {
+                chunk = new JsValue[0];
+            }
+        }
+
+        private void descend(Node node) {
+            while (node instanceof Concat) {
+                stack[depth++] = ((Concat) node).right;
+                node = ((Concat) node).left;
+            }
+            chunk = ((Leaf) node).values;
+            position = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < chunk.length) {
+                return true;
+            }
+            if (depth == 0) {
+                return false;
+            }
+            Node next = stack[--depth];
+            stack[depth] = null;
+            descend(next);
+            return true;
+        }
+
+        @Override
+        public JsValue next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return chunk[position++];
+        }
+    }
+}
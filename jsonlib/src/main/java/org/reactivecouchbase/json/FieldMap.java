@@ -0,0 +1,31 @@
+package org.reactivecouchbase.json;
+
+import java.util.AbstractMap;
+import java.util.Map;
+
+// Immutable map of the fields of a JsObject. Edits return a new map that shares the unchanged fields with
+// the previous one, so adding or removing a field doesn't copy the whole object. Small objects use an
+// ArrayFieldMap, bigger ones a TrieFieldMap. Both keep the fields in insertion order.
+abstract class FieldMap extends AbstractMap<String, JsValue> {
+
+    static FieldMap empty() {
+        return ArrayFieldMap.EMPTY;
+    }
+
+    static FieldMap of(Map<String, ? extends JsValue> values) {
+        if (values instanceof FieldMap) {
+            return (FieldMap) values;
+        }
+        if (values.size() <= ArrayFieldMap.MAX_SIZE) {
+            return ArrayFieldMap.copyOf(values);
+        }
+        return TrieFieldMap.copyOf(values);
+    }
+
+    abstract FieldMap plus(String key, JsValue value);
+
+    // the fields of values replace the existing ones
+    abstract FieldMap plusAll(Map<String, ? extends JsValue> values);
+
+    abstract FieldMap minus(String key);
+}
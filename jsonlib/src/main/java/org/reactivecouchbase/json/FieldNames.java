@@ -0,0 +1,55 @@
+package org.reactivecouchbase.json;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Shared symbol table for the field names of parsed objects : documents keep repeating the same keys,
+// and parsed objects kept in memory then share one String instance per key instead of one per object.
+// The table is bounded, once full it is cleared and filled again so that inputs with a lot of distinct
+// keys can't make it grow without limit.
+public final class FieldNames {
+
+    private static final int MAX_SIZE = 16 * 1024;
+    // keys longer than that are rarely repeated, they are not worth a slot in the table
+    private static final int MAX_NAME_LENGTH = 256;
+
+    private static final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private FieldNames() {
+    }
+
+    static String canonical(String name) {
+        if (name.length() > MAX_NAME_LENGTH) {
+            return name;
+        }
+        String canonical = names.get(name);
+        if (canonical != null) {
+            hits.increment();
+            return canonical;
+        }
+        misses.increment();
+        if (names.size() >= MAX_SIZE) {
+            names.clear();
+        }
+        canonical = names.putIfAbsent(name, name);
+        return canonical == null ? name : canonical;
+    }
+
+    public static long hits() {
+        return hits.sum();
+    }
+
+    public static long misses() {
+        return misses.sum();
+    }
+
+    public static int size() {
+        return names.size();
+    }
+
+    public static int maxSize() {
+        return MAX_SIZE;
+    }
+}
@@ -0,0 +1,141 @@
+package org.reactivecouchbase.json;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Collects the fields of an object being built, with the semantics of Map.put. Up to ArrayFieldMap.MAX_SIZE
+// fields, the builder follows the shared transitions of the shapes and keeps the values in an array, both
+// become the ArrayFieldMap of the object. When a transition isn't shared the keys are collected in an array
+// and get their own shape once built. Bigger objects switch to a LinkedHashMap : whatever their size, objects
+// keep the order of their fields.
+final class FieldsBuilder {
+
+    private Shape shape = Shape.EMPTY;
+    // keys of the fields once they don't follow shared shapes, null before
+    private String[] keys;
+    private JsValue[] values;
+    private int size = 0;
+    private Map<String, JsValue> map;
+
+    FieldsBuilder() {
+        this(4);
+    }
+
+    FieldsBuilder(int expectedSize) {
+        if (expectedSize > ArrayFieldMap.MAX_SIZE) {
+            map = newMap(expectedSize);
+        } else {
+            values = new JsValue[Math.max(1, expectedSize)];
+        }
+    }
+
+    // starts with the fields of the map
+    FieldsBuilder(ArrayFieldMap fields) {
+        this.shape = fields.shape();
+        this.size = fields.size();
+        this.values = Arrays.copyOf(fields.valueArray(), Math.max(1, Math.min(2 * size, ArrayFieldMap.MAX_SIZE)));
+    }
+
+    private static Map<String, JsValue> newMap(int expectedSize) {
+        return new LinkedHashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+    }
+
+    private int indexOf(String key) {
+        if (keys == null) {
+            return shape.indexOf(key);
+        }
+        for (int i = 0; i < size; i++) {
+            String k = keys[i];
+            if (k == key || (k != null && k.equals(key))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void put(String key, JsValue value) {
+        if (map != null) {
+            map.put(key, value);
+            return;
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+        if (size == ArrayFieldMap.MAX_SIZE) {
+            map = newMap(2 * size);
+            String[] names = keys == null ? shape.keys : keys;
+            for (int j = 0; j < size; j++) {
+                map.put(names[j], values[j]);
+            }
+            keys = null;
+            values = null;
+            map.put(key, value);
+            return;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.min(2 * size, ArrayFieldMap.MAX_SIZE));
+            if (keys != null) {
+                keys = Arrays.copyOf(keys, values.length);
+            }
+        }
+        if (keys == null) {
+            Shape next = shape.sharedWith(key);
+            if (next != null) {
+                shape = next;
+            } else {
+                keys = Arrays.copyOf(shape.keys, values.length);
+                keys[size] = key;
+            }
+        } else {
+            keys[size] = key;
+        }
+        values[size] = value;
+        size++;
+    }
+
+    void putAll(Map<String, ? extends JsValue> fields) {
+        for (Map.Entry<String, ? extends JsValue> entry : fields.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    void remove(String key) {
+        if (map != null) {
+            map.remove(key);
+            return;
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            if (keys == null) {
+                keys = Arrays.copyOf(shape.keys, values.length);
+            }
+            size--;
+            System.arraycopy(keys, i + 1, keys, i, size - i);
+            System.arraycopy(values, i + 1, values, i, size - i);
+            keys[size] = null;
+            values[size] = null;
+        }
+    }
+
+    int size() {
+        return map == null ? size : map.size();
+    }
+
+    // the builder must not be used afterwards
+    Map<String, JsValue> build() {
+        if (map != null) {
+            return map;
+        }
+        if (size == 0) {
+            return ArrayFieldMap.EMPTY;
+        }
+        JsValue[] fieldValues = size < values.length ? Arrays.copyOf(values, size) : values;
+        if (keys == null) {
+            return new ArrayFieldMap(shape, fieldValues);
+        }
+        return new ArrayFieldMap(Shape.of(keys, size), fieldValues);
+    }
+}
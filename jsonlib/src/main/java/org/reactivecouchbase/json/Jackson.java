@@ -1,5 +1,7 @@
 package org.reactivecouchbase.json;
 
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
@@ -19,18 +21,27 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.deser.Deserializers;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
 import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.databind.node.BigIntegerNode;
-import com.fasterxml.jackson.databind.node.DecimalNode;
 import com.fasterxml.jackson.databind.ser.Serializers;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import org.reactivecouchbase.common.Throwables;
 
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 
 public class Jackson {
 
@@ -51,6 +62,9 @@ public class Jackson {
         };
         mapper = new ObjectMapper().registerModule(module);
         jsonFactory = new JsonFactory(mapper);
+        // field names are canonicalized by FieldNames, interning them as well would only cost a lookup in the JVM string table
+        mapper.getFactory().disable(JsonFactory.Feature.INTERN_FIELD_NAMES);
+        jsonFactory.disable(JsonFactory.Feature.INTERN_FIELD_NAMES);
 
     }
 
@@ -70,6 +84,30 @@ public class Jackson {
         }
     }
 
+    public static JsonParser jsonParser(byte[] bytes, int offset, int length) {
+        try {
+            return jsonFactory.createParser(bytes, offset, length);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    public static JsonParser jsonParser(InputStream in) {
+        try {
+            return jsonFactory.createParser(in);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    public static JsonParser nonBlockingJsonParser() {
+        try {
+            return jsonFactory.createNonBlockingByteArrayParser();
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
     public static JsValue parseJsValue(String in) {
         try {
             return mapper.readValue(in, JsValue.class);
@@ -78,30 +116,140 @@ public class Jackson {
         }
     }
 
+    public static JsValue parseJsValue(byte[] in) {
+        return parseJsValue(in, 0, in.length);
+    }
+
+    public static JsValue parseJsValue(byte[] in, int offset, int length) {
+        try {
+            return mapper.readValue(in, offset, length, JsValue.class);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    public static JsValue parseJsValue(InputStream in) {
+        try {
+            return mapper.readValue(in, JsValue.class);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    // reads the remaining bytes of the buffer without moving its position,
+    // heap buffers are parsed in place and direct ones are streamed
+    public static JsValue parseJsValue(ByteBuffer in) {
+        if (in.hasArray()) {
+            return parseJsValue(in.array(), in.arrayOffset() + in.position(), in.remaining());
+        }
+        return parseJsValue(new ByteBufferBackedInputStream(in.duplicate()));
+    }
+
+    static JsValue readJsValue(JsonParser jp) throws IOException {
+        return mapper.readValue(jp, JsValue.class);
+    }
+
+    static JsValue readJsValue(byte[] in, int offset, int length) throws IOException {
+        return mapper.readValue(in, offset, length, JsValue.class);
+    }
+
+    // strings are generated in the reusable buffer of the thread, see OutputBuffers
     public static String generateFromJsValue(JsValue in) {
+        OutputBuffers.BufferWriter out = OutputBuffers.acquire();
         try {
-            StringWriter sw = new java.io.StringWriter();
-            JsonGenerator gen = stringJsonGenerator(sw);
+            JsonGenerator gen = jsonFactory.createGenerator(out);
             mapper.writeValue(gen, in);
-            sw.flush();
-            return sw.getBuffer().toString();
+            gen.close();
+            return out.toString();
         } catch (Exception e) {
             throw Throwables.propagate(e);
+        } finally {
+            OutputBuffers.release(out);
         }
     }
 
+    static JsonGenerator compactGenerator(Writer out) throws IOException {
+        return jsonFactory.createGenerator(out);
+    }
+
+    // compact output of the node itself, parts collects the output of the memoized node being cached, see Memo
+    static void writeNode(JsValue value, JsonGenerator json, Memo.Collector parts) throws IOException {
+        JsValueSerializer.INSTANCE.writeValue(value, json, parts);
+    }
+
     public static String prettify(JsValue in) {
+        OutputBuffers.BufferWriter out = OutputBuffers.acquire();
         try {
-            StringWriter sw = new java.io.StringWriter();
-            JsonGenerator gen = stringJsonGenerator(sw).setPrettyPrinter(new com.fasterxml.jackson.core.util.DefaultPrettyPrinter());
+            JsonGenerator gen = jsonFactory.createGenerator(out).setPrettyPrinter(new com.fasterxml.jackson.core.util.DefaultPrettyPrinter());
             mapper.writerWithDefaultPrettyPrinter().writeValue(gen, in);
-            sw.flush();
-            return sw.getBuffer().toString();
+            gen.close();
+            return out.toString();
         } catch (Exception e) {
             throw Throwables.propagate(e);
+        } finally {
+            OutputBuffers.release(out);
+        }
+    }
+
+    // streams the UTF-8 bytes of the value, the target is flushed but left open
+    static void writeJsValue(JsValue in, OutputStream out, boolean pretty) {
+        try {
+            writeJsValue(in, jsonFactory.createGenerator(out, JsonEncoding.UTF8), pretty);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    static void writeJsValue(JsValue in, Appendable out, boolean pretty) {
+        try {
+            writeJsValue(in, jsonFactory.createGenerator(asWriter(out)), pretty);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static void writeJsValue(JsValue in, JsonGenerator gen, boolean pretty) throws IOException {
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            if (pretty) {
+                gen.setPrettyPrinter(new com.fasterxml.jackson.core.util.DefaultPrettyPrinter());
+                mapper.writerWithDefaultPrettyPrinter().writeValue(gen, in);
+            } else {
+                mapper.writeValue(gen, in);
+            }
+        } finally {
+            gen.close();
         }
     }
 
+    private static Writer asWriter(final Appendable out) {
+        if (out instanceof Writer) {
+            return (Writer) out;
+        }
+        return new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                if (out instanceof StringBuilder) {
+                    ((StringBuilder) out).append(chars, offset, length);
+                } else {
+                    out.append(CharBuffer.wrap(chars, offset, length));
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (out instanceof Flushable) {
+                    ((Flushable) out).flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
     public static JsonNode toJson(final Object data) {
         try {
             return mapper.valueToTree(data);
@@ -110,6 +258,17 @@ public class Jackson {
         }
     }
 
+    // serializes the object straight into a JsValue, without building a JsonNode tree first
+    static JsValue toJsValue(Object data) {
+        try {
+            JsValueGenerator gen = new JsValueGenerator(mapper);
+            mapper.writeValue(gen, data);
+            return gen.result();
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
     public static JsValue jsonNodeToJsValue(JsonNode node) {
         try {
             return mapper.treeToValue(node, JsValue.class);
@@ -126,6 +285,18 @@ public class Jackson {
         }
     }
 
+    // binds the object from the tokens of the value, without converting it to a JsonNode tree first
+    static <A> A fromJsValue(JsValue json, Class<A> clazz) {
+        if (JsValue.class.isAssignableFrom(clazz) && clazz.isInstance(json)) {
+            return clazz.cast(json);
+        }
+        try {
+            return mapper.readValue(new JsValueParser(json, mapper), clazz);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static <A> A fromJson(JsonNode json, Class<A> clazz) {
         try {
             return mapper.treeToValue(json, clazz);
@@ -134,6 +305,37 @@ public class Jackson {
         }
     }
 
+    // value of the current token if it is a scalar one, JsNull otherwise
+    static JsValue readScalar(JsonParser jp) throws IOException {
+        JsonToken token = jp.getCurrentToken();
+        JsValue value = Syntax.nill();
+        if (token.equals(JsonToken.VALUE_NUMBER_INT)) {
+            // integers are read as primitives when they fit, without going through BigDecimal parsing
+            JsonParser.NumberType type = jp.getNumberType();
+            if (type.equals(JsonParser.NumberType.INT) || type.equals(JsonParser.NumberType.LONG)) {
+                value = JsNumber.of(jp.getLongValue());
+            } else {
+                value = new JsNumber(jp.getBigIntegerValue());
+            }
+        }
+        if (token.equals(JsonToken.VALUE_NUMBER_FLOAT)) {
+            value = new JsNumber(jp.getDecimalValue());
+        }
+        if (token.equals(JsonToken.VALUE_STRING)) {
+            value = new JsString(jp.getText());
+        }
+        if (token.equals(JsonToken.VALUE_TRUE)) {
+            value = new JsBoolean(true);
+        }
+        if (token.equals(JsonToken.VALUE_FALSE)) {
+            value = new JsBoolean(false);
+        }
+        if (token.equals(JsonToken.VALUE_NULL)) {
+            value = JsNull.JSNULL_INSTANCE;
+        }
+        return value;
+    }
+
     public static class JsDeserializers extends Deserializers.Base {
 
         private final ClassLoader classLoader;
@@ -156,7 +358,7 @@ public class Jackson {
         @Override
         public JsonSerializer<?> findSerializer(SerializationConfig serializationConfig, JavaType javaType, BeanDescription beanDescription) {
             if (JsValue.class.isAssignableFrom(beanDescription.getBeanClass())) {
-                return new JsValueSerializer();
+                return JsValueSerializer.INSTANCE;
             }
             return null;
         }
@@ -164,58 +366,128 @@ public class Jackson {
 
     private static class JsValueSerializer extends JsonSerializer<JsValue> {
 
-        // Maximum magnitude of BigDecimal to write out as a plain string
-        private static final BigDecimal MaxPlain = new BigDecimal(1e20);
-        // Minimum magnitude of BigDecimal to write out as a plain string
-        private static final BigDecimal MinPlain = new BigDecimal(1e-10);
+        // Maximum number of digits of an integer written out as a plain string (magnitude below 1e20)
+        private static final int MaxPlainDigits = 20;
+
+        private static final JsValueSerializer INSTANCE = new JsValueSerializer();
 
         @Override
         public void serialize(JsValue value, JsonGenerator json, SerializerProvider provider) throws IOException, JsonProcessingException {
-            for (JsNumber number : value.asOpt(JsNumber.class)) {
-                // Workaround  Same behaviour as if JsonGenerator were
-                // configured with WRITE_BIGDECIMAL_AS_PLAIN, but forced as this
-                // configuration is ignored when called from ObjectMapper.valueToTree
-                BigDecimal v = number.value;
-                BigDecimal va = v.abs();
-                boolean shouldWritePlain = va.compareTo(MaxPlain) < 0 && va.compareTo(MinPlain) > 0;
-                BigDecimal stripped = v.stripTrailingZeros();
-                String raw = stripped.toString();
-                if (shouldWritePlain) {
-                    raw = stripped.toPlainString();
-                }
-                if (raw.indexOf('E') < 0 && raw.indexOf('.') < 0) {
-                    json.writeTree(new BigIntegerNode(new BigInteger(raw)));
-                } else {
-                    json.writeTree(new DecimalNode(new BigDecimal(raw)));
-                }
-                // json.writeNumber(number.value);
+            if (json instanceof JsValueGenerator) {
+                // the value is already built, no need to write it token by token
+                ((JsValueGenerator) json).writeJsValue(value);
+                return;
             }
-            for (JsString str : value.asOpt(JsString.class)) {
-                json.writeString(str.value);
+            if (json.getPrettyPrinter() == null && !(json instanceof TokenBuffer)) {
+                write(value, json, null);
+            } else {
+                writeValue(value, json, provider);
             }
-            for (JsBoolean bool : value.asOpt(JsBoolean.class)) {
-                json.writeBoolean(bool.value);
-            }
-            for (JsNull nevermind : value.asOpt(JsNull.class)) {
-                json.writeNull();
+        }
+
+        // compact output, untouched compact original bytes and memoized output are copied as is
+        private void write(JsValue value, JsonGenerator json, Memo.Collector parts) throws IOException {
+            if (value instanceof LazyJsObject && ((LazyJsObject) value).isCompact()) {
+                json.writeRawValue(((LazyJsObject) value).rawValue());
+                return;
             }
-            for (JsUndefined nevermind : value.asOpt(JsUndefined.class)) {
-                json.writeNull();
+            Memo memo = Memo.of(value);
+            if (memo != null) {
+                memo.writeSerialized(value, json, parts);
+                return;
             }
-            for (JsArray array : value.asOpt(JsArray.class)) {
+            writeValue(value, json, parts);
+        }
+
+        private void writeValue(JsValue value, JsonGenerator json, Memo.Collector parts) throws IOException {
+            // dispatched on the concrete type, going through asOpt would allocate a result and an option per node
+            if (value instanceof JsObject) {
+                json.writeStartObject();
+                for (Map.Entry<String, JsValue> field : ((JsObject) value).values.entrySet()) {
+                    json.writeFieldName(field.getKey());
+                    write(field.getValue(), json, parts);
+                }
+                json.writeEndObject();
+            } else if (value instanceof JsArray) {
+                List<JsValue> values = ((JsArray) value).values;
                 json.writeStartArray();
-                for (JsValue val : array.values) {
-                    serialize(val, json, provider);
+                if (values instanceof RandomAccess) {
+                    for (int i = 0, size = values.size(); i < size; i++) {
+                        write(values.get(i), json, parts);
+                    }
+                } else {
+                    for (JsValue element : values) {
+                        write(element, json, parts);
+                    }
                 }
                 json.writeEndArray();
+            } else {
+                writeScalar(value, json);
             }
-            for (JsObject obj : value.asOpt(JsObject.class)) {
+        }
+
+        // pretty or buffered output, children go through the provider like any other value
+        private void writeValue(JsValue value, JsonGenerator json, SerializerProvider provider) throws IOException {
+            if (value instanceof JsObject) {
                 json.writeStartObject();
-                for (Map.Entry<String, JsValue> val : obj.values.entrySet()) {
-                    json.writeFieldName(val.getKey());
-                    serialize(val.getValue(), json, provider);
+                for (Map.Entry<String, JsValue> field : ((JsObject) value).values.entrySet()) {
+                    json.writeFieldName(field.getKey());
+                    serialize(field.getValue(), json, provider);
                 }
                 json.writeEndObject();
+            } else if (value instanceof JsArray) {
+                List<JsValue> values = ((JsArray) value).values;
+                json.writeStartArray();
+                if (values instanceof RandomAccess) {
+                    for (int i = 0, size = values.size(); i < size; i++) {
+                        serialize(values.get(i), json, provider);
+                    }
+                } else {
+                    for (JsValue element : values) {
+                        serialize(element, json, provider);
+                    }
+                }
+                json.writeEndArray();
+            } else {
+                writeScalar(value, json);
+            }
+        }
+
+        private void writeScalar(JsValue value, JsonGenerator json) throws IOException {
+            if (value instanceof JsString) {
+                json.writeString(((JsString) value).value);
+            } else if (value instanceof JsNumber) {
+                writeNumber((JsNumber) value, json);
+            } else if (value instanceof JsBoolean) {
+                json.writeBoolean(((JsBoolean) value).value);
+            } else if (value instanceof JsNull || value instanceof JsUndefined) {
+                json.writeNull();
+            }
+        }
+
+        // Same output as a JsonGenerator configured with WRITE_BIGDECIMAL_AS_PLAIN for magnitudes between
+        // 1e-10 and 1e20 once trailing zeros are stripped, forced here as this configuration is ignored when
+        // called from ObjectMapper.valueToTree. Integers are always in that range unless bigger than 1e20, and
+        // a stripped decimal with a positive scale prints the same in both notations, so only big integers
+        // are written in scientific notation.
+        private void writeNumber(JsNumber number, JsonGenerator json) throws IOException {
+            if (number.isLong()) {
+                json.writeNumber(number.value.longValue());
+                return;
+            }
+            BigDecimal value = number.value;
+            if (value.signum() == 0) {
+                json.writeNumber(0L);
+                return;
+            }
+            BigDecimal stripped = value.stripTrailingZeros();
+            int integerDigits = stripped.precision() - stripped.scale();
+            if (stripped.scale() > 0 || integerDigits > MaxPlainDigits) {
+                json.writeNumber(stripped);
+            } else if (integerDigits < 19) {
+                json.writeNumber(stripped.longValue());
+            } else {
+                json.writeNumber(stripped.toBigInteger());
             }
         }
     }
@@ -240,71 +512,74 @@ public class Jackson {
             return JsNull.JSNULL_INSTANCE;
         }
 
+        // leaves the parser on the last token of the value, like any other Jackson deserializer,
+        // so that several root values can be read one after the other from the same parser
         @Override
         public JsValue deserialize(JsonParser jp, DeserializationContext ctx) throws IOException, JsonProcessingException {
             if (jp.getCurrentToken() == null) {
                 jp.nextToken();
             }
-            JsonToken token = jp.getCurrentToken();
-            JsValue value = Syntax.nill();
-            if (token.equals(JsonToken.VALUE_NUMBER_FLOAT) || token.equals(JsonToken.VALUE_NUMBER_INT)) {
-                value = new JsNumber(jp.getDecimalValue());
-            }
-            if (token.equals(JsonToken.VALUE_STRING)) {
-                value = new JsString(jp.getText());
-            }
-            if (token.equals(JsonToken.VALUE_TRUE)) {
-                value = new JsBoolean(true);
-            }
-            if (token.equals(JsonToken.VALUE_FALSE)) {
-                value = new JsBoolean(false);
-            }
-            if (token.equals(JsonToken.VALUE_NULL)) {
-                value = JsNull.JSNULL_INSTANCE;
+            JsValue value = readValue(jp, ctx);
+            if (!clazz.isAssignableFrom(value.getClass())) {
+                throw MismatchedInputException.from(jp, clazz, "Can't read a " + clazz.getSimpleName() + " from a " + value.getClass().getSimpleName());
             }
+            return value;
+        }
+
+        private JsValue readValue(JsonParser jp, DeserializationContext ctx) throws IOException, JsonProcessingException {
+            JsonToken token = jp.getCurrentToken();
+            JsValue value = readScalar(jp);
             if (token.equals(JsonToken.VALUE_EMBEDDED_OBJECT)) {
-                jp.nextToken();
-                value = readObject(jp, ctx);
+                value = readEmbedded(jp.getEmbeddedObject());
             }
-            if (token.equals(JsonToken.START_OBJECT)) {
-                jp.nextToken();
+            if (token.equals(JsonToken.START_OBJECT) || token.equals(JsonToken.FIELD_NAME)) {
                 value = readObject(jp, ctx);
             }
             if (token.equals(JsonToken.START_ARRAY)) {
-                jp.nextToken();
                 value = readArray(jp, ctx);
             }
-            jp.nextToken();
-            if (!clazz.isAssignableFrom(value.getClass())) {
-                throw ctx.mappingException(clazz);
-            }
             return value;
         }
 
+        private JsValue readEmbedded(Object embedded) {
+            if (embedded == null) {
+                return JsNull.JSNULL_INSTANCE;
+            }
+            if (embedded instanceof JsValue) {
+                return (JsValue) embedded;
+            }
+            if (embedded instanceof byte[]) {
+                return new JsString(Base64Variants.getDefaultVariant().encode((byte[]) embedded));
+            }
+            return toJsValue(embedded);
+        }
+
+        // fields are accumulated in a private builder that is handed over to the JsObject once complete,
+        // adding them one by one with JsObject.add would copy the whole map for every field
         private JsObject readObject(JsonParser jp, DeserializationContext ctx) throws java.io.IOException, JsonParseException {
-            JsObject object = new JsObject();
-            while(jp.getCurrentToken() != null && !jp.getCurrentToken().equals(JsonToken.END_OBJECT)) {
-                JsonToken token = jp.getCurrentToken();
-                if (token.equals(JsonToken.FIELD_NAME)) {
-                    String key = jp.getCurrentName();
-                    jp.nextToken();
-                    JsValue val = deserialize(jp, ctx);
-                    object = object.add(Syntax.$(key, val));
-                }
-                if (!token.equals(JsonToken.FIELD_NAME)) {
-                    jp.nextToken();
-                }
+            FieldsBuilder values = new FieldsBuilder();
+            JsonToken token = jp.getCurrentToken();
+            if (token.equals(JsonToken.START_OBJECT)) {
+                token = jp.nextToken();
+            }
+            while (token != null && token.equals(JsonToken.FIELD_NAME)) {
+                String key = FieldNames.canonical(jp.getCurrentName());
+                jp.nextToken();
+                values.put(key, readValue(jp, ctx));
+                token = jp.nextToken();
             }
-            return object;
+            return new JsObject(values.build());
         }
 
+        // same as readObject, elements are accumulated before building the JsArray only once
         private JsArray readArray(JsonParser jp, DeserializationContext ctx) throws java.io.IOException, JsonParseException {
-            JsArray array = new JsArray();
-            while(jp.getCurrentToken() != null && !jp.getCurrentToken().equals(JsonToken.END_ARRAY)) {
-                JsValue val = deserialize(jp, ctx);
-                array = array.addElement(val);
+            List<JsValue> values = new ArrayList<>();
+            JsonToken token = jp.nextToken();
+            while (token != null && !token.equals(JsonToken.END_ARRAY)) {
+                values.add(readValue(jp, ctx));
+                token = jp.nextToken();
             }
-            return array;
+            return new JsArray(values);
         }
     }
 }
@@ -0,0 +1,128 @@
+package org.reactivecouchbase.json;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import org.joda.time.ReadableInstant;
+import org.joda.time.ReadablePartial;
+import org.joda.time.ReadablePeriod;
+import org.reactivecouchbase.functional.Option;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Converts the usual java values to JsValues without going through Jackson, which is only used for the
+// other objects (beans, java.util dates, enums ...). Optional values become their content or null and dates
+// and times from java.time and joda ISO strings, at top level and inside maps, collections and arrays only :
+// the mapper has no Jdk8, JavaTime or Joda module, so in a bean they are still serialized as beans,
+// e.g. an Optional field gives {"empty":false,"present":true}.
+final class JavaValues {
+
+    private JavaValues() {
+    }
+
+    static JsValue wrap(Object o) {
+        if (o == null) {
+            return JsNull.JSNULL_INSTANCE;
+        }
+        if (o instanceof JsValue) {
+            return (JsValue) o;
+        }
+        if (o instanceof String) {
+            return new JsString((String) o);
+        }
+        if (o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte) {
+            return JsNumber.of(((Number) o).longValue());
+        }
+        if (o instanceof Double) {
+            return new JsNumber((Double) o);
+        }
+        if (o instanceof Float) {
+            return new JsNumber(BigDecimal.valueOf((Float) o));
+        }
+        if (o instanceof BigDecimal) {
+            BigDecimal value = (BigDecimal) o;
+            // like Jackson trees, decimals lose their trailing zeros
+            return new JsNumber(value.signum() == 0 ? BigDecimal.ZERO : value.stripTrailingZeros());
+        }
+        if (o instanceof BigInteger) {
+            return new JsNumber((BigInteger) o);
+        }
+        if (o instanceof Boolean) {
+            return new JsBoolean((Boolean) o);
+        }
+        if (o instanceof Map) {
+            JsObject object = wrapMap((Map<?, ?>) o);
+            if (object != null) {
+                return object;
+            }
+        } else if (o instanceof Collection) {
+            Collection<?> collection = (Collection<?>) o;
+            List<JsValue> values = new ArrayList<>(collection.size());
+            for (Object element : collection) {
+                values.add(wrap(element));
+            }
+            return new JsArray(values);
+        } else if (o.getClass().isArray()) {
+            return wrapArray(o);
+        } else if (o instanceof Optional) {
+            // not what Jackson gives for them, see the comment of the class
+            return wrap(((Optional<?>) o).orElse(null));
+        } else if (o instanceof Option) {
+            Option<?> option = (Option<?>) o;
+            return option.isDefined() ? wrap(option.get()) : JsNull.JSNULL_INSTANCE;
+        } else if (o instanceof TemporalAccessor || o instanceof TemporalAmount
+                || o instanceof ReadableInstant || o instanceof ReadablePartial || o instanceof ReadablePeriod) {
+            return new JsString(o.toString());
+        }
+        return Jackson.toJsValue(o);
+    }
+
+    static JsArray wrapAll(List<?> objects) {
+        List<JsValue> values = new ArrayList<>(objects.size());
+        for (Object element : objects) {
+            values.add(wrap(element));
+        }
+        return new JsArray(values);
+    }
+
+    static JsObject wrapFields(Map<String, ?> map) {
+        FieldsBuilder values = new FieldsBuilder(map.size());
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            values.put(entry.getKey(), wrap(entry.getValue()));
+        }
+        return new JsObject(values.build());
+    }
+
+    // null if a key is not a string, Jackson serializes the map then
+    @SuppressWarnings("unchecked")
+    private static JsObject wrapMap(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+        }
+        return wrapFields((Map<String, ?>) map);
+    }
+
+    private static JsValue wrapArray(Object array) {
+        if (array instanceof byte[]) {
+            return new JsString(Base64Variants.getDefaultVariant().encode((byte[]) array));
+        }
+        if (array instanceof char[]) {
+            return new JsString(new String((char[]) array));
+        }
+        int length = Array.getLength(array);
+        List<JsValue> values = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            values.add(wrap(Array.get(array, i)));
+        }
+        return new JsArray(values);
+    }
+}
@@ -1,9 +1,12 @@
 package org.reactivecouchbase.json;
 
 import org.reactivecouchbase.common.Throwables;
+import org.reactivecouchbase.functional.Option;
 import org.reactivecouchbase.json.mapping.JsResult;
 import org.reactivecouchbase.json.mapping.Reader;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -19,11 +22,17 @@ public class JsArray extends JsValue implements Iterable<JsValue> {
         if (values == null) {
             throw new IllegalArgumentException("Values can't be null !");
         }
-        this.values = Collections.unmodifiableList(values);
+        this.values = values instanceof ElementList ? values : Collections.unmodifiableList(values);
     }
 
     public JsArray() {
-        this.values = Collections.unmodifiableList(new ArrayList<>());
+        this.values = ElementList.EMPTY;
+    }
+
+    // the elements as a persistent list, edits share the unchanged elements with this array. Arrays built
+    // from another kind of list are copied once, by their first edit
+    private ElementList elements() {
+        return ElementList.of(values);
     }
 
     public boolean contains(JsValue value) {
@@ -35,6 +44,8 @@ public class JsArray extends JsValue implements Iterable<JsValue> {
         return values.iterator();
     }
 
+    // O(1) on parsed and built arrays, O(log n) once the array was edited (added to, concatenated or sliced) :
+    // the edited elements are kept in an ElementList, walk them with the iterator
     @Override
     public JsValue get(int idx) {
         try {
@@ -48,40 +59,38 @@ public class JsArray extends JsValue implements Iterable<JsValue> {
         if (arr == null) {
             return new JsArray(values);
         }
-        List<JsValue> vals = new ArrayList<>();
-        vals.addAll(values);
-        vals.addAll(arr.values);
-        return new JsArray(vals);
+        return new JsArray(elements().concat(arr.values));
     }
 
     public JsArray preprend(JsArray arr) {
         if (arr == null) {
             return new JsArray(values);
         }
-        List<JsValue> vals = new ArrayList<>();
-        vals.addAll(values);
-        vals.addAll(0, arr.values);
-        return new JsArray(vals);
+        return new JsArray(ElementList.of(arr.values).concat(values));
     }
 
     public JsArray addElement(JsValue arr) {
         if (arr == null) {
             return new JsArray(values);
         }
-        List<JsValue> vals = new ArrayList<>();
-        vals.addAll(values);
-        vals.add(arr);
-        return new JsArray(vals);
+        return new JsArray(elements().plus(arr));
     }
 
     public JsArray preprendElement(JsValue arr) {
         if (arr == null) {
             return new JsArray(values);
         }
-        List<JsValue> vals = new ArrayList<>();
-        vals.addAll(values);
-        vals.add(0, arr);
-        return new JsArray(vals);
+        return new JsArray(elements().plusFirst(arr));
+    }
+
+    // elements from (inclusive) to (exclusive), the indexes are clamped to the bounds of the array
+    public JsArray slice(int from, int to) {
+        int start = Math.max(0, from);
+        int end = Math.min(size(), to);
+        if (start >= end) {
+            return new JsArray();
+        }
+        return new JsArray(elements().slice(start, end));
     }
 
     public JsArray map(Function<JsValue, JsValue> map) {
@@ -125,7 +134,7 @@ public class JsArray extends JsValue implements Iterable<JsValue> {
 
     @Override
     String toJsonString() {
-        return "[" + values.stream().map(JsValue::toJsonString).collect(Collectors.joining(",")) + "]";
+        return JsonStringWriter.write(this);
     }
 
     @Override
@@ -169,9 +178,11 @@ public class JsArray extends JsValue implements Iterable<JsValue> {
             return false;
         }
         JsArray jsArray = (JsArray) o;
-        for (int i = 0; i < size(); i++) {
-            JsValue v1 = get(i);
-            JsValue v2 = jsArray.get(i);
+        // walked with iterators, get(int) is O(log n) on the elements of an edited array. Past its end the
+        // other array gives undefined, like get(int)
+        Iterator<JsValue> others = jsArray.iterator();
+        for (JsValue v1 : this) {
+            JsValue v2 = others.hasNext() ? others.next() : JsUndefined.JSUNDEFINED_INSTANCE;
             if (v1 == null && v2 == null) {
                 // we're good
             } else if (v1 != null && v2 == null) {
@@ -192,8 +203,106 @@ public class JsArray extends JsValue implements Iterable<JsValue> {
         return values.hashCode();
     }
 
+    // see JsObject.memoize
+    public JsArray memoize() {
+        return memoize(Memo.DEFAULT_BUDGET);
+    }
+
+    public JsArray memoize(int budget) {
+        return (JsArray) Memo.memoize(this, budget);
+    }
+
     @Override
     public JsArray cloneNode() {
         return new JsArray(new ArrayList<>(values));
     }
-}
\ No newline at end of file
+
+    // Mutable builder, see JsObject.builder
+    public static Builder builder() {
+        return new Builder(10);
+    }
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    public static final class Builder {
+
+        private List<JsValue> values;
+
+        private Builder(int expectedSize) {
+            this.values = new ArrayList<>(Math.max(0, expectedSize));
+        }
+
+        private List<JsValue> values() {
+            if (values == null) {
+                throw new IllegalStateException("Builder already built !");
+            }
+            return values;
+        }
+
+        public Builder add(JsValue value) {
+            values().add(value);
+            return this;
+        }
+
+        public <T extends JsValue> Builder add(Option<T> value) {
+            List<JsValue> elements = values();
+            if (value.isDefined()) {
+                elements.add(value.get());
+            }
+            return this;
+        }
+
+        public Builder add(Integer value) {
+            return add(new JsNumber(value));
+        }
+
+        public Builder add(Long value) {
+            return add(new JsNumber(value));
+        }
+
+        public Builder add(Double value) {
+            return add(new JsNumber(value));
+        }
+
+        public Builder add(BigInteger value) {
+            return add(new JsNumber(value));
+        }
+
+        public Builder add(BigDecimal value) {
+            return add(new JsNumber(value));
+        }
+
+        public Builder add(Boolean value) {
+            return add(new JsBoolean(value));
+        }
+
+        public Builder add(String value) {
+            return add(new JsString(value));
+        }
+
+        public Builder addNull() {
+            return add(JsNull.JSNULL_INSTANCE);
+        }
+
+        // the elements of the array are added at the end, a null array is ignored
+        public Builder addAll(JsArray array) {
+            List<JsValue> elements = values();
+            if (array != null) {
+                elements.addAll(array.values);
+            }
+            return this;
+        }
+
+        public int size() {
+            return values().size();
+        }
+
+        public JsArray build() {
+            JsArray array = new JsArray(values());
+            values = null;
+            return array;
+        }
+    }
+}
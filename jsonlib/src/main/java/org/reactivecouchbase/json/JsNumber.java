@@ -7,6 +7,21 @@ import java.math.BigInteger;
 import java.text.DecimalFormat;
 
 public class JsNumber extends JsValue implements java.lang.Comparable<JsNumber> {
+
+    // instances for the small integers parsed over and over (counters, indexes, flags ...)
+    private static final long CACHE_LOW = -128L;
+    private static final long CACHE_HIGH = 1024L;
+    private static final JsNumber[] cache = new JsNumber[(int) (CACHE_HIGH - CACHE_LOW) + 1];
+
+    static {
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = new JsNumber(CACHE_LOW + i);
+        }
+    }
+
+    // set at construction because the field is public, a number can't be kept as a primitive and inflated
+    // on demand. Numbers built from integers that fit in a long hold a compact BigDecimal (no BigInteger
+    // behind it), on which value.longValue(), equals and compareTo don't go through BigDecimal arithmetic
     public final BigDecimal value;
 
     public JsNumber(BigDecimal value) {
@@ -20,21 +35,18 @@ public class JsNumber extends JsValue implements java.lang.Comparable<JsNumber>
         if (value == null) {
             throw new IllegalArgumentException("Value can't be null !");
         }
-        this.value = new BigDecimal(value);
+        this.value = value.bitLength() < 64 ? BigDecimal.valueOf(value.longValue()) : new BigDecimal(value);
     }
 
     public JsNumber(Integer value) {
-        if (value == null) {
-            throw new IllegalArgumentException("Value can't be null !");
-        }
-        this.value = BigDecimal.valueOf(value).setScale(0);
+        this(value == null ? null : value.longValue());
     }
 
     public JsNumber(Long value) {
         if (value == null) {
             throw new IllegalArgumentException("Value can't be null !");
         }
-        this.value = BigDecimal.valueOf(value).setScale(0);
+        this.value = BigDecimal.valueOf(value);
     }
 
     public JsNumber(Double value) {
@@ -52,10 +64,20 @@ public class JsNumber extends JsValue implements java.lang.Comparable<JsNumber>
     }
 
     public JsNumber(Short value) {
-        if (value == null) {
-            throw new IllegalArgumentException("Value can't be null !");
+        this(value == null ? null : value.longValue());
+    }
+
+    // shared instance for small integers, used by the parser
+    static JsNumber of(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return cache[(int) (value - CACHE_LOW)];
         }
-        this.value = BigDecimal.valueOf(value).setScale(0);
+        return new JsNumber(value);
+    }
+
+    // true when the value is an integer with a zero scale that fits in a long
+    boolean isLong() {
+        return value.scale() == 0 && value.precision() < 19;
     }
 
     @Override
@@ -75,7 +97,7 @@ public class JsNumber extends JsValue implements java.lang.Comparable<JsNumber>
 
     @Override
     String toJsonString() {
-        return value.toPlainString();
+        return JsonStringWriter.write(this);
     }
 
     @Override
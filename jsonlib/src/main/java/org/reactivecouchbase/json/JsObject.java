@@ -13,13 +13,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
-import static org.reactivecouchbase.json.Syntax.$;
 import static org.reactivecouchbase.json.Syntax.nill;
 
 public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsValue>> {
@@ -29,21 +28,29 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
         if (values == null) {
             throw new IllegalArgumentException("Values can't be null !");
         }
-        this.values = Collections.unmodifiableMap(values);
+        this.values = values instanceof FieldMap ? values : Collections.unmodifiableMap(values);
     }
 
     public JsObject() {
-        this.values = Collections.unmodifiableMap(new HashMap<>());
+        this.values = FieldMap.empty();
+    }
+
+    // the fields as a persistent map, edits share the unchanged fields with this object. Objects built from
+    // another kind of map are copied once, by their first edit
+    private FieldMap fieldMap() {
+        return FieldMap.of(values);
+    }
+
+    // a single field added straight to the map, without going through a pair
+    private JsObject plus(String key, JsValue value) {
+        return new JsObject(fieldMap().plus(key, value));
     }
 
     public JsObject merge(JsObject with) {
         if (with == null) {
             throw new IllegalArgumentException("Value can't be null !");
         }
-        Map<String, JsValue> newValues = new HashMap<>();
-        newValues.putAll(with.values);
-        newValues.putAll(values);
-        return new JsObject(newValues);
+        return new JsObject(with.fieldMap().plusAll(values));
     }
 
     @Override
@@ -55,8 +62,7 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
         if (with == null) {
             throw new IllegalArgumentException("Value can't be null !");
         }
-        Map<String, JsValue> newValues = new HashMap<>();
-        newValues.putAll(with.values);
+        Map<String, JsValue> newValues = new LinkedHashMap<>();
         for (Map.Entry<String, JsValue> entry : values.entrySet()) {
             if (with.values.containsKey(entry.getKey()) && entry.getValue().is(JsObject.class)) {
                 newValues.put(entry.getKey(), entry.getValue().as(JsObject.class).deepMerge(with.values.get(entry.getKey()).as(JsObject.class)));
@@ -64,7 +70,7 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
                 newValues.put(entry.getKey(), entry.getValue());
             }
         }
-        return new JsObject(newValues);
+        return new JsObject(with.fieldMap().plusAll(newValues));
     }
 
     public Set<String> fieldsSet() {
@@ -79,24 +85,21 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
         if (jsObject == null) {
             return new JsObject(values);
         }
-        Map<String, JsValue> newValues = new HashMap<String, JsValue>();
-        newValues.putAll(values);
-        newValues.putAll(jsObject.values);
-        return new JsObject(newValues);
+        return new JsObject(fieldMap().plusAll(jsObject.values));
     }
 
     public JsObject add(String key, Option<JsValue> optVal) {
         if (optVal.isDefined()) {
-            return add($(key, optVal.get()));
+            return plus(key, optVal.get());
         }
         return new JsObject(values);
     }
 
     public JsObject addOrNull(String key, Option<JsValue> optVal) {
         if (optVal.isDefined()) {
-            return add($(key, optVal.get()));
+            return plus(key, optVal.get());
         } else {
-            return add($(key, nill()));
+            return plus(key, nill());
         }
     }
 
@@ -136,10 +139,7 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
         if (field == null) {
             return new JsObject(values);
         }
-        Map<String, JsValue> newValues = new HashMap<String, JsValue>();
-        newValues.putAll(values);
-        newValues.remove(field);
-        return new JsObject(newValues);
+        return new JsObject(fieldMap().minus(field));
     }
 
     @Override
@@ -188,16 +188,14 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
 
     @Override
     String toJsonString() {
-        return "{" + toJsonPairString() + "}";
+        return JsonStringWriter.write(this);
     }
 
     @Override
     public String toString() {
-        return "JsObject(" + toJsonPairString() + ")";
-    }
-
-    private String toJsonPairString() {
-        return values.entrySet().stream().map(entry -> "\"" + entry.getKey() + "\":" + entry.getValue().toJsonString()).collect(Collectors.joining(","));
+        StringBuilder builder = new StringBuilder("JsObject(");
+        JsonStringWriter.writeFields(this, builder);
+        return builder.append(')').toString();
     }
 
     @Override
@@ -244,12 +242,12 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
     }
 
     public JsObject mapProperties(Function<Tuple<String, JsValue>, JsValue> block) {
-        Map<String, JsValue> resulting = new HashMap<>();
+        FieldsBuilder resulting = new FieldsBuilder(values.size());
         for (Map.Entry<String, JsValue> entry : values.entrySet()) {
             JsValue tuple = block.apply(new Tuple<>(entry.getKey(), entry.getValue()));
             resulting.put(entry.getKey(), tuple);
         }
-        return new JsObject(resulting);
+        return new JsObject(resulting.build());
     }
 
     public <T> Map<String, T> mapPropertiesWith(Reader<T> reader) {
@@ -293,23 +291,35 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
         return !isEmpty();
     }
 
+    // Copy of this object, and of all the objects and arrays it contains, that caches its hash code and its
+    // serialized forms. Only nodes whose output is at least 256 chars long and whose own text (without the output
+    // of their cached children, that they share) fits the budget (in chars) are cached, the others are written
+    // again into the output of their parent. Only worth it for values that are hashed or written many times
+    public JsObject memoize() {
+        return memoize(Memo.DEFAULT_BUDGET);
+    }
+
+    public JsObject memoize(int budget) {
+        return (JsObject) Memo.memoize(this, budget);
+    }
+
     @Override
     public JsObject cloneNode() {
-        return new JsObject(new HashMap<>(values));
+        return new JsObject(new LinkedHashMap<>(values));
     }
 
     public JsObject with(String key) {
-        return add(new JsPair(key, JsNull.JSNULL_INSTANCE));
+        return plus(key, JsNull.JSNULL_INSTANCE);
     }
 
     public JsObject withNull(String key) {
-        return add(new JsPair(key, JsNull.JSNULL_INSTANCE));
+        return plus(key, JsNull.JSNULL_INSTANCE);
     }
     public JsObject withUndefined(String key) {
-        return add(new JsPair(key, JsUndefined.JSUNDEFINED_INSTANCE));
+        return plus(key, JsUndefined.JSUNDEFINED_INSTANCE);
     }
     public <T extends JsValue> JsObject with(String key, T value) {
-        return add(new JsPair(key, value));
+        return plus(key, value);
     }
 
     public <T extends JsValue> JsObject with(String key, Option<T> value) {
@@ -317,31 +327,31 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
     }
 
     public JsObject with(String key, Integer value) {
-        return add(new JsPair(key, value));
+        return plus(key, new JsNumber(value));
     }
 
     public JsObject with(String key, Long value) {
-        return add(new JsPair(key, value));
+        return plus(key, new JsNumber(value));
     }
 
     public JsObject with(String key, Double value) {
-        return add(new JsPair(key, value));
+        return plus(key, new JsNumber(value));
     }
 
     public JsObject with(String key, BigInteger value) {
-        return add(new JsPair(key, value));
+        return plus(key, new JsNumber(value));
     }
 
     public JsObject with(String key, BigDecimal value) {
-        return add(new JsPair(key, value));
+        return plus(key, new JsNumber(value));
     }
 
     public JsObject with(String key, Boolean value) {
-        return add(new JsPair(key, value));
+        return plus(key, new JsBoolean(value));
     }
 
     public JsObject with(String key, String value) {
-        return add(new JsPair(key, value));
+        return plus(key, new JsString(value));
     }
 
     public JsObject withInt(String key, Option<Integer> value) {
@@ -406,4 +416,131 @@ public class JsObject extends JsValue implements Iterable<Map.Entry<String, JsVa
             }
         }));
     }
-}
\ No newline at end of file
+
+    // Mutable builder, cheaper than a chain of with(...) or add(...) as fields are put in a single map that is
+    // handed over to the built object (arrays for small objects). A builder can only be built once
+    public static Builder builder() {
+        return new Builder(4);
+    }
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    public static final class Builder {
+
+        private FieldsBuilder values;
+
+        private Builder(int expectedSize) {
+            this.values = new FieldsBuilder(expectedSize);
+        }
+
+        private FieldsBuilder values() {
+            if (values == null) {
+                throw new IllegalStateException("Builder already built !");
+            }
+            return values;
+        }
+
+        public Builder put(String key, JsValue value) {
+            values().put(key, value);
+            return this;
+        }
+
+        public <T extends JsValue> Builder put(String key, Option<T> value) {
+            FieldsBuilder fields = values();
+            if (value.isDefined()) {
+                fields.put(key, value.get());
+            }
+            return this;
+        }
+
+        public Builder put(String key, Integer value) {
+            return put(key, new JsNumber(value));
+        }
+
+        public Builder put(String key, Long value) {
+            return put(key, new JsNumber(value));
+        }
+
+        public Builder put(String key, Double value) {
+            return put(key, new JsNumber(value));
+        }
+
+        public Builder put(String key, BigInteger value) {
+            return put(key, new JsNumber(value));
+        }
+
+        public Builder put(String key, BigDecimal value) {
+            return put(key, new JsNumber(value));
+        }
+
+        public Builder put(String key, Boolean value) {
+            return put(key, new JsBoolean(value));
+        }
+
+        public Builder put(String key, String value) {
+            return put(key, new JsString(value));
+        }
+
+        public Builder putNull(String key) {
+            return put(key, JsNull.JSNULL_INSTANCE);
+        }
+
+        public Builder putUndefined(String key) {
+            return put(key, JsUndefined.JSUNDEFINED_INSTANCE);
+        }
+
+        public Builder putInt(String key, Option<Integer> value) {
+            return value.isDefined() ? put(key, value.get()) : this;
+        }
+
+        public Builder putLong(String key, Option<Long> value) {
+            return value.isDefined() ? put(key, value.get()) : this;
+        }
+
+        public Builder putDouble(String key, Option<Double> value) {
+            return value.isDefined() ? put(key, value.get()) : this;
+        }
+
+        public Builder putBigInt(String key, Option<BigInteger> value) {
+            return value.isDefined() ? put(key, value.get()) : this;
+        }
+
+        public Builder putBigDec(String key, Option<BigDecimal> value) {
+            return value.isDefined() ? put(key, value.get()) : this;
+        }
+
+        public Builder putBoolean(String key, Option<Boolean> value) {
+            return value.isDefined() ? put(key, value.get()) : this;
+        }
+
+        public Builder putString(String key, Option<String> value) {
+            return value.isDefined() ? put(key, value.get()) : this;
+        }
+
+        // the fields of the object replace the ones already put, a null object is ignored
+        public Builder putAll(JsObject object) {
+            FieldsBuilder fields = values();
+            if (object != null) {
+                fields.putAll(object.values);
+            }
+            return this;
+        }
+
+        public Builder remove(String key) {
+            values().remove(key);
+            return this;
+        }
+
+        public int size() {
+            return values().size();
+        }
+
+        public JsObject build() {
+            JsObject object = new JsObject(values().build());
+            values = null;
+            return object;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.reactivecouchbase.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.reactivecouchbase.common.Throwables;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+// Parses only the parts of a document reachable through a set of selectors, using the syntax of
+// JsValue.querySelector ("meta.id", "rows[2].value", "[0].name"). Every other subtree is skipped by
+// the parser without being built. Selecting an array index keeps the preceding elements as null so
+// that querySelector gives the same result on the projection as on the whole document.
+// A compiled projection is immutable and can be shared between threads.
+public class JsProjection {
+
+    // same patterns as JsValue.querySelectorOpt
+    private static final Pattern fieldArraySelector = Pattern.compile("(.+)\\[(\\d)+\\]");
+    private static final Pattern arraySelector = Pattern.compile("\\[(\\d)+\\]");
+    private static final Pattern dotSplitter = Pattern.compile("\\.");
+    private static final Pattern squareBracketSplitter = Pattern.compile("\\[");
+
+    private final Node root = new Node();
+
+    private JsProjection(String... paths) {
+        for (String path : paths) {
+            Node current = root;
+            try {
+                for (String part : dotSplitter.split(path)) {
+                    // parts are read like querySelectorOpt does : "a[1][2]" is the element 1 of the field "a"
+                    if (fieldArraySelector.matcher(part).matches()) {
+                        String[] subParts = squareBracketSplitter.split(part);
+                        current = current.field(subParts[0]).index(Integer.valueOf(subParts[1].replace("]", "")));
+                    } else if (part.startsWith("[") && arraySelector.matcher(part).matches()) {
+                        current = current.index(Integer.valueOf(part.replace("[", "").replace("]", "")));
+                    } else {
+                        current = current.field(part);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                // querySelectorOpt gives nothing for this path, the nodes already added select nothing either
+                continue;
+            }
+            current.selected = true;
+        }
+    }
+
+    public static JsProjection compile(String... paths) {
+        return new JsProjection(paths);
+    }
+
+    public JsValue parse(String json) {
+        return project(Jackson.jsonParser(json));
+    }
+
+    public JsValue parse(byte[] json) {
+        return parse(json, 0, json.length);
+    }
+
+    public JsValue parse(byte[] json, int offset, int length) {
+        return project(Jackson.jsonParser(json, offset, length));
+    }
+
+    public JsValue parse(InputStream json) {
+        return project(Jackson.jsonParser(json));
+    }
+
+    private JsValue project(JsonParser jp) {
+        try {
+            if (jp.nextToken() == null) {
+                // same error as Json.parse
+                throw MismatchedInputException.from(jp, JsValue.class, "No content to map due to end-of-input");
+            }
+            JsValue value = read(jp, root);
+            return value == null ? new JsObject() : value;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            try {
+                jp.close();
+            } catch (IOException e) {
+                // nothing to do here
+            }
+        }
+    }
+
+    // null when the value doesn't have the expected structure, and is dropped from the projection
+    private JsValue read(JsonParser jp, Node node) throws IOException {
+        if (node.selected) {
+            return Jackson.readJsValue(jp);
+        }
+        JsonToken token = jp.getCurrentToken();
+        if (token.equals(JsonToken.START_OBJECT) && node.fields != null) {
+            FieldsBuilder values = new FieldsBuilder();
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String key = jp.getCurrentName();
+                Node child = node.fields.get(key);
+                jp.nextToken();
+                if (child == null) {
+                    jp.skipChildren();
+                } else {
+                    JsValue value = read(jp, child);
+                    if (value != null) {
+                        values.put(FieldNames.canonical(key), value);
+                    }
+                }
+            }
+            return new JsObject(values.build());
+        }
+        if (token.equals(JsonToken.START_ARRAY) && node.indexes != null) {
+            int last = node.indexes.lastKey();
+            List<JsValue> values = new ArrayList<>();
+            int index = 0;
+            while (jp.nextToken() != JsonToken.END_ARRAY) {
+                Node child = index <= last ? node.indexes.get(index) : null;
+                JsValue value = child == null ? null : read(jp, child);
+                if (value == null) {
+                    jp.skipChildren();
+                    if (index < last) {
+                        value = JsNull.JSNULL_INSTANCE;
+                    }
+                }
+                if (value != null) {
+                    values.add(value);
+                }
+                index++;
+            }
+            return new JsArray(values);
+        }
+        jp.skipChildren();
+        return null;
+    }
+
+    private static final class Node {
+        private Map<String, Node> fields;
+        private TreeMap<Integer, Node> indexes;
+        // the whole value is kept, selectors going deeper are irrelevant
+        private boolean selected = false;
+
+        private Node field(String name) {
+            if (fields == null) {
+                fields = new HashMap<>();
+            }
+            return fields.computeIfAbsent(name, k -> new Node());
+        }
+
+        private Node index(Integer index) {
+            if (indexes == null) {
+                indexes = new TreeMap<>();
+            }
+            return indexes.computeIfAbsent(index, k -> new Node());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.reactivecouchbase.json;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import org.reactivecouchbase.json.exceptions.JsParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Non blocking parser for input arriving in chunks. Bytes are pushed with feed as they are received and every
+// value is handed to the consumer as soon as it is complete, so only the value being parsed is kept in memory.
+// Instances are not thread safe, chunks must be fed one at a time and in order.
+public class JsPushParser {
+
+    private final Consumer<JsValue> onValue;
+    private final boolean arrayElements;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private boolean inRootArray = false;
+    // arrayElements only : nothing but whitespaces can follow the top level array
+    private boolean rootArrayEnded = false;
+    private boolean ended = false;
+    private byte[] copyBuffer;
+
+    private JsPushParser(Consumer<JsValue> onValue, boolean arrayElements) {
+        this.onValue = onValue;
+        this.arrayElements = arrayElements;
+        this.parser = Jackson.nonBlockingJsonParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    // emits every root value of the input, which can hold several of them separated by whitespaces
+    public static JsPushParser values(Consumer<JsValue> onValue) {
+        return new JsPushParser(onValue, false);
+    }
+
+    // emits the elements of the top level array one by one, the array itself is never built
+    public static JsPushParser arrayElements(Consumer<JsValue> onValue) {
+        return new JsPushParser(onValue, true);
+    }
+
+    public JsPushParser feed(byte[] chunk) {
+        return feed(chunk, 0, chunk.length);
+    }
+
+    public JsPushParser feed(byte[] chunk, int offset, int length) {
+        if (ended) {
+            throw new IllegalStateException("Can't feed a parser after the end of the input");
+        }
+        try {
+            feeder.feedInput(chunk, offset, offset + length);
+            drain();
+        } catch (IOException e) {
+            throw parseError(e);
+        }
+        return this;
+    }
+
+    // consumes the remaining bytes of the chunk, direct buffers are copied as the Jackson feeder only reads arrays
+    public JsPushParser feed(ByteBuffer chunk) {
+        int length = chunk.remaining();
+        if (chunk.hasArray()) {
+            feed(chunk.array(), chunk.arrayOffset() + chunk.position(), length);
+        } else {
+            if (copyBuffer == null || copyBuffer.length < length) {
+                copyBuffer = new byte[length];
+            }
+            chunk.duplicate().get(copyBuffer, 0, length);
+            feed(copyBuffer, 0, length);
+        }
+        chunk.position(chunk.limit());
+        return this;
+    }
+
+    // to call once the whole input has been fed, fails if the last value is incomplete
+    public void end() {
+        if (ended) {
+            return;
+        }
+        ended = true;
+        JsonLocation location;
+        try {
+            feeder.endOfInput();
+            drain();
+            location = parser.getCurrentLocation();
+            parser.close();
+        } catch (IOException e) {
+            throw parseError(e);
+        }
+        if (!stack.isEmpty() || inRootArray) {
+            throw error("Unexpected end of input", location);
+        }
+    }
+
+    private void drain() throws IOException {
+        JsonToken token = parser.nextToken();
+        while (token != null && !token.equals(JsonToken.NOT_AVAILABLE)) {
+            handle(token);
+            token = parser.nextToken();
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (rootArrayEnded) {
+            throw error("Unexpected content after the top level array", parser.getTokenLocation());
+        }
+        if (token.equals(JsonToken.START_OBJECT)) {
+            if (arrayElements && stack.isEmpty() && !inRootArray) {
+                throw error("Expected a top level array", parser.getTokenLocation());
+            }
+            stack.push(new Frame(new FieldsBuilder(), null));
+        } else if (token.equals(JsonToken.START_ARRAY)) {
+            if (arrayElements && stack.isEmpty() && !inRootArray) {
+                inRootArray = true;
+            } else {
+                stack.push(new Frame(null, new ArrayList<>()));
+            }
+        } else if (token.equals(JsonToken.FIELD_NAME)) {
+            stack.peek().key = FieldNames.canonical(parser.getCurrentName());
+        } else if (token.equals(JsonToken.END_OBJECT)) {
+            complete(new JsObject(stack.pop().fields.build()));
+        } else if (token.equals(JsonToken.END_ARRAY)) {
+            if (stack.isEmpty()) {
+                inRootArray = false;
+                rootArrayEnded = true;
+            } else {
+                complete(new JsArray(stack.pop().elements));
+            }
+        } else {
+            if (arrayElements && stack.isEmpty() && !inRootArray) {
+                throw error("Expected a top level array", parser.getTokenLocation());
+            }
+            complete(Jackson.readScalar(parser));
+        }
+    }
+
+    private void complete(JsValue value) {
+        Frame parent = stack.peek();
+        if (parent == null) {
+            onValue.accept(value);
+        } else if (parent.fields != null) {
+            parent.fields.put(parent.key, value);
+        } else {
+            parent.elements.add(value);
+        }
+    }
+
+    private static JsParseException error(String message, JsonLocation location) {
+        return new JsParseException(message + " at line " + location.getLineNr() + ", column " + location.getColumnNr(),
+                null, location.getLineNr(), location.getColumnNr(), location.getByteOffset());
+    }
+
+    private JsParseException parseError(IOException e) {
+        JsonLocation location = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getLocation() : null;
+        String message = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage() : e.getMessage();
+        if (location == null) {
+            location = parser.getCurrentLocation();
+        }
+        return new JsParseException("Invalid json at line " + location.getLineNr() + ", column " + location.getColumnNr() + " : " + message,
+                e, location.getLineNr(), location.getColumnNr(), location.getByteOffset());
+    }
+
+    // object or array being built
+    private static final class Frame {
+        private final FieldsBuilder fields;
+        private final List<JsValue> elements;
+        private String key;
+
+        private Frame(FieldsBuilder fields, List<JsValue> elements) {
+            this.fields = fields;
+            this.elements = elements;
+        }
+    }
+}
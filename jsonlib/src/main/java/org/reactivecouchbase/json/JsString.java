@@ -1,6 +1,5 @@
 package org.reactivecouchbase.json;
 
-import com.fasterxml.jackson.databind.node.TextNode;
 import org.reactivecouchbase.functional.Option;
 
 public class JsString extends JsValue implements java.lang.Comparable<JsString> {
@@ -30,7 +29,7 @@ public class JsString extends JsValue implements java.lang.Comparable<JsString>
 
     @Override
     String toJsonString() {
-        return new TextNode(value).toString();
+        return JsonStringWriter.write(this);
     }
 
     @Override
@@ -0,0 +1,249 @@
+package org.reactivecouchbase.json;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.base.GeneratorBase;
+import com.fasterxml.jackson.core.json.JsonWriteContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+// Generator building a JsValue from what Jackson serializers write, to convert objects without going through
+// a JsonNode tree. Values are built like the ones obtained from valueToTree then treeToValue : decimals
+// without their trailing zeros, binary data as base64 strings. Raw json written by serializers is parsed.
+final class JsValueGenerator extends GeneratorBase {
+
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private JsValue result;
+
+    JsValueGenerator(ObjectCodec codec) {
+        super(0, codec);
+    }
+
+    // the value written, JsUndefined if nothing was written
+    JsValue result() {
+        return result == null ? JsUndefined.JSUNDEFINED_INSTANCE : result;
+    }
+
+    // adds a value that is already built, used by the JsValue serializer
+    void writeJsValue(JsValue value) throws IOException {
+        _verifyValueWrite("write a JsValue");
+        add(value);
+    }
+
+    private void add(JsValue value) {
+        Frame parent = stack.peek();
+        if (parent == null) {
+            result = value;
+        } else if (parent.fields != null) {
+            parent.fields.put(parent.key, value);
+        } else {
+            parent.elements.add(value);
+        }
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        _verifyValueWrite("start an array");
+        _writeContext = _writeContext.createChildArrayContext();
+        stack.push(new Frame(null, new ArrayList<>()));
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        if (!_writeContext.inArray()) {
+            _reportError("Current context not an array but " + _writeContext.typeDesc());
+        }
+        _writeContext = _writeContext.getParent();
+        add(new JsArray(stack.pop().elements));
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        _verifyValueWrite("start an object");
+        _writeContext = _writeContext.createChildObjectContext();
+        stack.push(new Frame(new FieldsBuilder(), null));
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        if (!_writeContext.inObject()) {
+            _reportError("Current context not an object but " + _writeContext.typeDesc());
+        }
+        _writeContext = _writeContext.getParent();
+        add(new JsObject(stack.pop().fields.build()));
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        if (_writeContext.writeFieldName(name) == JsonWriteContext.STATUS_EXPECT_VALUE) {
+            _reportError("Can not write a field name, expecting a value");
+        }
+        stack.peek().key = FieldNames.canonical(name);
+    }
+
+    @Override
+    public void writeString(String text) throws IOException {
+        _verifyValueWrite("write a string");
+        add(text == null ? JsNull.JSNULL_INSTANCE : new JsString(text));
+    }
+
+    @Override
+    public void writeString(char[] text, int offset, int length) throws IOException {
+        writeString(new String(text, offset, length));
+    }
+
+    @Override
+    public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+        writeString(new String(text, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+        writeString(new String(text, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeRaw(String text) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(String text, int offset, int length) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(char[] text, int offset, int length) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(char c) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRawValue(String text) throws IOException {
+        _verifyValueWrite("write a raw value");
+        add(Jackson.parseJsValue(text));
+    }
+
+    @Override
+    public void writeRawValue(String text, int offset, int length) throws IOException {
+        writeRawValue(text.substring(offset, offset + length));
+    }
+
+    @Override
+    public void writeRawValue(char[] text, int offset, int length) throws IOException {
+        writeRawValue(new String(text, offset, length));
+    }
+
+    @Override
+    public void writeBinary(Base64Variant variant, byte[] data, int offset, int length) throws IOException {
+        if (offset != 0 || length != data.length) {
+            data = Arrays.copyOfRange(data, offset, offset + length);
+        }
+        // same encoding as a binary node read back by the deserializer
+        writeString(Base64Variants.getDefaultVariant().encode(data));
+    }
+
+    @Override
+    public void writeNumber(int value) throws IOException {
+        writeNumber((long) value);
+    }
+
+    @Override
+    public void writeNumber(long value) throws IOException {
+        _verifyValueWrite("write a number");
+        add(JsNumber.of(value));
+    }
+
+    @Override
+    public void writeNumber(BigInteger value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        _verifyValueWrite("write a number");
+        add(new JsNumber(value));
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        _verifyValueWrite("write a number");
+        add(new JsNumber(value));
+    }
+
+    @Override
+    public void writeNumber(float value) throws IOException {
+        _verifyValueWrite("write a number");
+        add(new JsNumber(BigDecimal.valueOf(value)));
+    }
+
+    @Override
+    public void writeNumber(BigDecimal value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        _verifyValueWrite("write a number");
+        add(new JsNumber(value.signum() == 0 ? BigDecimal.ZERO : value.stripTrailingZeros()));
+    }
+
+    @Override
+    public void writeNumber(String encoded) throws IOException {
+        if (encoded == null) {
+            writeNull();
+            return;
+        }
+        writeNumber(new BigDecimal(encoded));
+    }
+
+    @Override
+    public void writeBoolean(boolean state) throws IOException {
+        _verifyValueWrite("write a boolean");
+        add(new JsBoolean(state));
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        _verifyValueWrite("write null");
+        add(JsNull.JSNULL_INSTANCE);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    protected void _releaseBuffers() {
+    }
+
+    @Override
+    protected void _verifyValueWrite(String typeMsg) throws IOException {
+        if (_writeContext.writeValue() == JsonWriteContext.STATUS_EXPECT_NAME) {
+            _reportError("Can not " + typeMsg + ", expecting field name");
+        }
+    }
+
+    // object or array being built
+    private static final class Frame {
+        private final FieldsBuilder fields;
+        private final List<JsValue> elements;
+        private String key;
+
+        private Frame(FieldsBuilder fields, List<JsValue> elements) {
+            this.fields = fields;
+            this.elements = elements;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package org.reactivecouchbase.json;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.core.base.ParserMinimalBase;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.Map;
+
+// Parser reading the tokens of a JsValue tree, to bind objects from a JsValue without converting it to a
+// JsonNode tree first. Numbers are read the way the serializer writes them : without trailing zeros, as
+// longs or big integers when they are integers below 1e20 and as big decimals otherwise.
+final class JsValueParser extends ParserMinimalBase {
+
+    // values of the JsonStreamContext types, whose constants are protected in older Jackson versions
+    private static final int ROOT = 0;
+    private static final int ARRAY = 1;
+    private static final int OBJECT = 2;
+
+    private ObjectCodec codec;
+    private Cursor cursor;
+    private JsValue current;
+    // value of the current number token, a Long, a BigInteger or a BigDecimal
+    private Number number;
+    private boolean closed = false;
+
+    JsValueParser(JsValue root, ObjectCodec codec) {
+        this.codec = codec;
+        this.cursor = new Cursor(null, ROOT, root);
+    }
+
+    @Override
+    public JsonToken nextToken() throws IOException {
+        if (closed) {
+            return null;
+        }
+        JsonToken token = cursor.next();
+        current = cursor.value;
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            number = normalize((JsNumber) current);
+            token = number instanceof BigDecimal ? JsonToken.VALUE_NUMBER_FLOAT : JsonToken.VALUE_NUMBER_INT;
+        } else if (token == JsonToken.START_OBJECT) {
+            cursor = new Cursor(cursor, OBJECT, current);
+        } else if (token == JsonToken.START_ARRAY) {
+            cursor = new Cursor(cursor, ARRAY, current);
+        } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+            cursor = cursor.parent;
+        }
+        _currToken = token;
+        return token;
+    }
+
+    @Override
+    protected void _handleEOF() {
+    }
+
+    // the name of an object or array is held by the context of its parent
+    private Cursor nameContext() {
+        if ((_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) && cursor.parent != null) {
+            return cursor.parent;
+        }
+        return cursor;
+    }
+
+    @Override
+    public String getCurrentName() {
+        return closed ? null : nameContext().name;
+    }
+
+    @Override
+    public void overrideCurrentName(String name) {
+        if (!closed) {
+            nameContext().name = name;
+        }
+    }
+
+    @Override
+    public JsonStreamContext getParsingContext() {
+        return cursor;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        current = null;
+        _currToken = null;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public ObjectCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public void setCodec(ObjectCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public Version version() {
+        return Version.unknownVersion();
+    }
+
+    @Override
+    public JsonLocation getCurrentLocation() {
+        return JsonLocation.NA;
+    }
+
+    @Override
+    public JsonLocation getTokenLocation() {
+        return JsonLocation.NA;
+    }
+
+    @Override
+    public String getText() {
+        if (_currToken == null) {
+            return null;
+        }
+        if (_currToken == JsonToken.FIELD_NAME) {
+            return cursor.name;
+        }
+        if (_currToken == JsonToken.VALUE_STRING) {
+            return ((JsString) current).value;
+        }
+        if (_currToken == JsonToken.VALUE_NUMBER_INT || _currToken == JsonToken.VALUE_NUMBER_FLOAT) {
+            return number.toString();
+        }
+        return _currToken.asString();
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        String text = getText();
+        return text == null ? null : text.toCharArray();
+    }
+
+    @Override
+    public int getTextLength() {
+        String text = getText();
+        return text == null ? 0 : text.length();
+    }
+
+    @Override
+    public int getTextOffset() {
+        return 0;
+    }
+
+    @Override
+    public boolean hasTextCharacters() {
+        return false;
+    }
+
+    @Override
+    public Object getEmbeddedObject() {
+        return null;
+    }
+
+    @Override
+    public byte[] getBinaryValue(Base64Variant variant) throws IOException {
+        if (_currToken != JsonToken.VALUE_STRING) {
+            throw _constructError("Current token (" + _currToken + ") not VALUE_STRING, can not access as binary");
+        }
+        try {
+            return variant.decode(((JsString) current).value);
+        } catch (IllegalArgumentException e) {
+            throw _constructError(e.getMessage());
+        }
+    }
+
+    // same value as the one written by the serializer, see Jackson.JsValueSerializer.writeNumber
+    private static Number normalize(JsNumber number) {
+        if (number.isLong()) {
+            return number.value.longValue();
+        }
+        BigDecimal value = number.value;
+        if (value.signum() == 0) {
+            return 0L;
+        }
+        BigDecimal stripped = value.stripTrailingZeros();
+        int integerDigits = stripped.precision() - stripped.scale();
+        if (stripped.scale() > 0 || integerDigits > 20) {
+            return stripped;
+        }
+        if (integerDigits < 19) {
+            return stripped.longValue();
+        }
+        return stripped.toBigInteger();
+    }
+
+    private Number number() throws IOException {
+        if (_currToken != JsonToken.VALUE_NUMBER_INT && _currToken != JsonToken.VALUE_NUMBER_FLOAT) {
+            throw _constructError("Current token (" + _currToken + ") not numeric, can not use numeric value accessors");
+        }
+        return number;
+    }
+
+    @Override
+    public NumberType getNumberType() throws IOException {
+        Number value = number();
+        if (value instanceof Long) {
+            return value.longValue() == value.intValue() ? NumberType.INT : NumberType.LONG;
+        }
+        return value instanceof BigInteger ? NumberType.BIG_INTEGER : NumberType.BIG_DECIMAL;
+    }
+
+    @Override
+    public Number getNumberValue() throws IOException {
+        Number value = number();
+        if (value instanceof Long && value.longValue() == value.intValue()) {
+            return value.intValue();
+        }
+        return value;
+    }
+
+    @Override
+    public int getIntValue() throws IOException {
+        return number().intValue();
+    }
+
+    @Override
+    public long getLongValue() throws IOException {
+        return number().longValue();
+    }
+
+    @Override
+    public BigInteger getBigIntegerValue() throws IOException {
+        Number value = number();
+        if (value instanceof BigInteger) {
+            return (BigInteger) value;
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toBigInteger();
+        }
+        return BigInteger.valueOf(value.longValue());
+    }
+
+    @Override
+    public float getFloatValue() throws IOException {
+        return number().floatValue();
+    }
+
+    @Override
+    public double getDoubleValue() throws IOException {
+        return number().doubleValue();
+    }
+
+    @Override
+    public BigDecimal getDecimalValue() throws IOException {
+        Number value = number();
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        return BigDecimal.valueOf(value.longValue());
+    }
+
+    private static JsonToken tokenOf(JsValue value) {
+        if (value instanceof JsObject) {
+            return JsonToken.START_OBJECT;
+        }
+        if (value instanceof JsArray) {
+            return JsonToken.START_ARRAY;
+        }
+        if (value instanceof JsString) {
+            return JsonToken.VALUE_STRING;
+        }
+        if (value instanceof JsNumber) {
+            // refined by the parser once the number is normalized
+            return JsonToken.VALUE_NUMBER_INT;
+        }
+        if (value instanceof JsBoolean) {
+            return Boolean.TRUE.equals(((JsBoolean) value).value) ? JsonToken.VALUE_TRUE : JsonToken.VALUE_FALSE;
+        }
+        return JsonToken.VALUE_NULL;
+    }
+
+    // position in the root value, an object or an array, and value of the last token read in it
+    private static final class Cursor extends JsonStreamContext {
+
+        private final Cursor parent;
+        private final JsValue container;
+        private Iterator<Map.Entry<String, JsValue>> fields;
+        private Iterator<JsValue> elements;
+        private String name;
+        private JsValue value;
+        // the field name has been read, its value comes next
+        private boolean valuePending = false;
+
+        private Cursor(Cursor parent, int type, JsValue container) {
+            this.parent = parent;
+            this.container = container;
+            this._type = type;
+            this._index = -1;
+            if (type == TYPE_OBJECT) {
+                fields = ((JsObject) container).values.entrySet().iterator();
+            } else if (type == TYPE_ARRAY) {
+                elements = ((JsArray) container).values.iterator();
+            }
+        }
+
+        private JsonToken next() {
+            if (_type == TYPE_ROOT) {
+                if (_index >= 0) {
+                    value = null;
+                    return null;
+                }
+                _index++;
+                value = container;
+                return tokenOf(value);
+            }
+            if (_type == TYPE_ARRAY) {
+                if (elements.hasNext()) {
+                    _index++;
+                    value = elements.next();
+                    return tokenOf(value);
+                }
+                value = null;
+                return JsonToken.END_ARRAY;
+            }
+            if (valuePending) {
+                valuePending = false;
+                return tokenOf(value);
+            }
+            if (fields.hasNext()) {
+                Map.Entry<String, JsValue> field = fields.next();
+                _index++;
+                name = field.getKey();
+                value = field.getValue();
+                valuePending = true;
+                return JsonToken.FIELD_NAME;
+            }
+            value = null;
+            return JsonToken.END_OBJECT;
+        }
+
+        @Override
+        public JsonStreamContext getParent() {
+            return parent;
+        }
+
+        @Override
+        public String getCurrentName() {
+            return name;
+        }
+    }
+}
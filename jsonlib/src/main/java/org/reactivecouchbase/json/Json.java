@@ -1,24 +1,34 @@
 package org.reactivecouchbase.json;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
+import org.reactivecouchbase.common.Throwables;
+import org.reactivecouchbase.json.exceptions.JsParseException;
 import org.reactivecouchbase.json.mapping.*;
 import org.reactivecouchbase.validation.Rule;
 import org.reactivecouchbase.validation.Validation;
 import org.reactivecouchbase.validation.ValidationError;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.reactivecouchbase.json.Syntax.$;
 
 public class Json {
 
     public static JsObject obj(Map<String, ?> objects) {
-        JsObject obj = Json.obj();
-        for (Map.Entry<String, ?> entry : objects.entrySet()) {
-            obj = obj.add($(entry.getKey(), wrap(entry.getValue())));
-        }
-        return obj;
+        return JavaValues.wrapFields(objects);
     }
 
     public static <T> Format<T> format(final Class<T> clazz) {
@@ -43,7 +53,7 @@ public class Json {
         }
         return value -> {
             try {
-                return new JsSuccess<T>(Jackson.fromJson(Jackson.jsValueToJsonNode(value), clazz));
+                return new JsSuccess<T>(Jackson.fromJsValue(value, clazz));
             } catch (Exception e) {
                 return new JsError<T>(Collections.<Throwable>singletonList(e));
             }
@@ -51,17 +61,110 @@ public class Json {
     }
 
     public static <T> Writer<T> writes(final Class<T> clazz) {
-        return value -> Jackson.jsonNodeToJsValue(Jackson.toJson(value));
+        return value -> Jackson.toJsValue(value);
     }
 
     public static JsValue toJson(Object o) {
-        return Jackson.jsonNodeToJsValue(Jackson.toJson(o));
+        return Jackson.toJsValue(o);
     }
 
     public static JsValue parse(String json) {
         return Jackson.parseJsValue(json);
     }
 
+    public static JsValue parse(byte[] json) {
+        return Jackson.parseJsValue(json);
+    }
+
+    public static JsValue parse(byte[] json, int offset, int length) {
+        return Jackson.parseJsValue(json, offset, length);
+    }
+
+    public static JsValue parse(InputStream json) {
+        return Jackson.parseJsValue(json);
+    }
+
+    public static JsValue parse(ByteBuffer json) {
+        return Jackson.parseJsValue(json);
+    }
+
+    // reads the file through memory mapped windows, without loading it on the heap first
+    public static JsValue parse(Path json) {
+        try {
+            return Jackson.parseJsValue(new MappedFileInputStream(json));
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    // only builds the values selected by the paths, see JsProjection
+    public static JsValue parse(String json, String... paths) {
+        return JsProjection.compile(paths).parse(json);
+    }
+
+    public static JsValue parse(byte[] json, String... paths) {
+        return JsProjection.compile(paths).parse(json);
+    }
+
+    // the elements of a top level array, read one by one. The stream is lazy and closing it closes the input
+    public static Stream<JsValue> parseArrayElements(InputStream json) {
+        return JsonLines.arrayElements(json);
+    }
+
+    // same as parseArrayElements(InputStream), the file is read through memory mapped windows
+    public static Stream<JsValue> parseArrayElements(Path json) {
+        try {
+            return JsonLines.arrayElements(new MappedFileInputStream(json));
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    // parses the elements of a top level array on the threads of the pool, the result keeps the original order
+    public static JsArray parseArrayParallel(byte[] json, ForkJoinPool pool) {
+        return ParallelArrayParser.parse(json, pool);
+    }
+
+    // the file is read through memory mapped windows, its elements are parsed while the rest of it is read
+    public static JsArray parseArrayParallel(Path json, ForkJoinPool pool) {
+        try (InputStream in = new MappedFileInputStream(json)) {
+            return ParallelArrayParser.parse(in, pool);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    // only indexes the top level fields, values are decoded when first accessed and untouched compact objects
+    // are written back as their original bytes, see LazyJsObject.isCompact. Objects nested in arrays are lazy too.
+    // Errors and trailing content are handled like by parse
+    public static JsValue parseLazy(byte[] json) {
+        return LazyJsObject.parse(json, 0, json.length);
+    }
+
+    public static JsValue parseLazy(byte[] json, int offset, int length) {
+        return LazyJsObject.parse(json, offset, length);
+    }
+
+    public static JsValue parseLazy(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return LazyJsObject.parse(bytes, 0, bytes.length);
+    }
+
+    // one json document per line, blank lines are ignored. The stream is lazy and closing it closes the input
+    public static Stream<JsValue> parseLines(InputStream json) {
+        return JsonLines.lines(json, null);
+    }
+
+    // same as parseLines, but lines that can't be parsed are reported to onError and skipped
+    public static Stream<JsValue> parseLines(InputStream json, Consumer<JsParseException> onError) {
+        return JsonLines.lines(json, onError);
+    }
+
+    // concatenated json documents, separated by whitespaces (if any). The stream is lazy and closing it closes the input
+    public static Stream<JsValue> parseValues(InputStream json) {
+        return JsonLines.values(json);
+    }
+
     public static <T> Reader<T> safeReader(final Reader<T> reader) {
         return value -> {
             try {
@@ -73,23 +176,27 @@ public class Json {
     }
 
     public static JsObject obj(Iterable<? extends JsObject> objects) {
-        JsObject root = new JsObject();
+        JsObject.Builder builder = JsObject.builder();
         for (JsObject object : objects) {
-            root = root.add(object);
+            builder.putAll(object);
         }
-        return root;
+        return builder.build();
     }
 
     public static JsObject obj(JsObject... objects) {
-        return obj(Arrays.asList(objects));
+        JsObject.Builder builder = JsObject.builder(objects.length);
+        for (JsObject object : objects) {
+            builder.putAll(object);
+        }
+        return builder.build();
     }
 
     public static JsObject obj() {
-        return obj(new ArrayList<JsObject>());
+        return new JsObject();
     }
 
     public static <T extends Object> JsArray array(List<T> objects) {
-        return new JsArray(objects.stream().map(Json::wrap).collect(Collectors.toList()));
+        return JavaValues.wrapAll(objects);
     }
 
     @SuppressWarnings("unchecked")
@@ -116,9 +223,59 @@ public class Json {
         return stringify(value);
     }
 
-    @SuppressWarnings("unchecked")
+    // the writeTo methods stream the UTF-8 json of the value to the target without building the whole string,
+    // the output is the same as Jackson.generateFromJsValue, or prettyPrint when pretty. Targets are not closed
+    public static void writeTo(JsValue value, OutputStream out) {
+        writeTo(value, out, false);
+    }
+
+    public static void writeTo(JsValue value, OutputStream out, boolean pretty) {
+        Jackson.writeJsValue(value, out, pretty);
+    }
+
+    public static void writeTo(JsValue value, WritableByteChannel out) {
+        writeTo(value, out, false);
+    }
+
+    public static void writeTo(JsValue value, WritableByteChannel out, boolean pretty) {
+        Jackson.writeJsValue(value, Channels.newOutputStream(out), pretty);
+    }
+
+    // fails with a BufferOverflowException if the buffer is too small
+    public static void writeTo(JsValue value, ByteBuffer out) {
+        writeTo(value, out, false);
+    }
+
+    public static void writeTo(JsValue value, ByteBuffer out, boolean pretty) {
+        Jackson.writeJsValue(value, new ByteBufferBackedOutputStream(out), pretty);
+    }
+
+    public static void writeTo(JsValue value, Appendable out) {
+        writeTo(value, out, false);
+    }
+
+    public static void writeTo(JsValue value, Appendable out, boolean pretty) {
+        Jackson.writeJsValue(value, out, pretty);
+    }
+
+    // canonical form of the value, identical for equal documents : keys sorted by code point, numbers without
+    // trailing zeros (1.50 and 1.5 give the same output), minimal escaping. Meant for hashing and comparisons
+    public static String canonicalize(JsValue value) {
+        return CanonicalWriter.write(value);
+    }
+
+    // UTF-8 bytes of the canonical form, streamed, the stream is not closed
+    public static void writeCanonical(JsValue value, OutputStream out) {
+        try {
+            CanonicalWriter.write(value, out);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    // common java values are converted directly, other objects are serialized by Jackson
     public static JsValue wrap(Object o) {
-        return Jackson.jsonNodeToJsValue(Jackson.toJson(o));
+        return JavaValues.wrap(o);
     }
 
     public static <T> JsResult<T> fromJson(JsValue value, Reader<T> reader) {
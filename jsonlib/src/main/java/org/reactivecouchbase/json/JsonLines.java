@@ -0,0 +1,262 @@
+package org.reactivecouchbase.json;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import org.reactivecouchbase.common.Throwables;
+import org.reactivecouchbase.json.exceptions.JsParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+final class JsonLines {
+
+    private JsonLines() {
+    }
+
+    static Stream<JsValue> lines(InputStream in, Consumer<JsParseException> onError) {
+        return stream(new LineIterator(in, onError), () -> {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        });
+    }
+
+    static Stream<JsValue> values(InputStream in) {
+        ValueIterator iterator = new ValueIterator(Jackson.jsonParser(in), false);
+        return stream(iterator, iterator::close);
+    }
+
+    static Stream<JsValue> arrayElements(InputStream in) {
+        ValueIterator iterator = new ValueIterator(Jackson.jsonParser(in), true);
+        return stream(iterator, iterator::close);
+    }
+
+    private static Stream<JsValue> stream(Iterator<JsValue> iterator, Runnable onClose) {
+        Spliterator<JsValue> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(onClose);
+    }
+
+    private static JsParseException parseError(IOException e, long line, long column, long offset) {
+        String message = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage() : e.getMessage();
+        return new JsParseException("Invalid json at line " + line + ", column " + column + " : " + message, e, line, column, offset);
+    }
+
+    // Splits the input on '\n' in a reusable byte buffer and parses every line in place, so only the
+    // current line is kept in memory. Each line gets its own Jackson parser over the buffer slice : a parser
+    // can't be resynchronized after a syntax error, and that is what allows to skip a bad line and continue.
+    private static final class LineIterator implements Iterator<JsValue> {
+
+        private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+        private final InputStream in;
+        private final Consumer<JsParseException> onError;
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        // offset of buffer[0] from the beginning of the input
+        private long bufferOffset = 0L;
+        // start of the current line, end of the data read so far and where to resume looking for '\n'
+        private int start = 0;
+        private int end = 0;
+        private int scan = 0;
+        private long line = 0L;
+        private boolean eof = false;
+        private JsValue next;
+
+        private LineIterator(InputStream in, Consumer<JsParseException> onError) {
+            this.in = in;
+            this.onError = onError;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (!readLine()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public JsValue next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JsValue value = next;
+            next = null;
+            return value;
+        }
+
+        private boolean readLine() {
+            int newLine = indexOfNewLine();
+            if (newLine < 0) {
+                return false;
+            }
+            int lineStart = start;
+            int lineEnd = newLine;
+            if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            line++;
+            start = Math.min(newLine + 1, end);
+            scan = start;
+            if (!isBlank(lineStart, lineEnd)) {
+                try {
+                    next = parseLine(lineStart, lineEnd);
+                } catch (IOException e) {
+                    JsonLocation location = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getLocation() : null;
+                    long column = location == null ? -1L : location.getColumnNr();
+                    long offset = bufferOffset + lineStart + Math.max(column - 1L, 0L);
+                    JsParseException error = parseError(e, line, column, offset);
+                    if (onError == null) {
+                        throw error;
+                    }
+                    onError.accept(error);
+                }
+            }
+            return true;
+        }
+
+        private JsValue parseLine(int lineStart, int lineEnd) throws IOException {
+            try (JsonParser jp = Jackson.jsonParser(buffer, lineStart, lineEnd - lineStart)) {
+                JsValue value = Jackson.readJsValue(jp);
+                if (jp.nextToken() != null) {
+                    throw new JsonParseException(jp, "Unexpected content after the json value");
+                }
+                return value;
+            }
+        }
+
+        private boolean isBlank(int from, int to) {
+            for (int i = from; i < to; i++) {
+                byte b = buffer[i];
+                if (b != ' ' && b != '\t' && b != '\r') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // index of the next '\n', or the end of the data if the last line is not terminated, -1 once everything has been read
+        private int indexOfNewLine() {
+            while (true) {
+                for (int i = scan; i < end; i++) {
+                    if (buffer[i] == '\n') {
+                        return i;
+                    }
+                }
+                scan = end;
+                if (eof) {
+                    return start < end ? end : -1;
+                }
+                fill();
+            }
+        }
+
+        private void fill() {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                bufferOffset += start;
+                end -= start;
+                scan -= start;
+                start = 0;
+            }
+            if (end == buffer.length) {
+                byte[] bigger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, bigger, 0, end);
+                buffer = bigger;
+            }
+            try {
+                int read = in.read(buffer, end, buffer.length - end);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    // Reads whitespace separated root values, or the elements of a top level array, with a single parser.
+    // A syntax error leaves the parser in an unknown state, so it ends the iteration.
+    private static final class ValueIterator implements Iterator<JsValue> {
+
+        private final JsonParser jp;
+        private final boolean arrayElements;
+        private boolean started = false;
+        private boolean done = false;
+        private JsValue next;
+
+        private ValueIterator(JsonParser jp, boolean arrayElements) {
+            this.jp = jp;
+            this.arrayElements = arrayElements;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (done) {
+                return false;
+            }
+            try {
+                if (arrayElements && !started) {
+                    started = true;
+                    if (jp.nextToken() != JsonToken.START_ARRAY) {
+                        JsonLocation location = jp.getTokenLocation();
+                        close();
+                        throw new JsParseException("Expected a top level array at line " + location.getLineNr() + ", column " + location.getColumnNr(),
+                                null, location.getLineNr(), location.getColumnNr(), location.getByteOffset());
+                    }
+                }
+                JsonToken token = jp.nextToken();
+                if (token == null || (arrayElements && token.equals(JsonToken.END_ARRAY))) {
+                    close();
+                    return false;
+                }
+                next = Jackson.readJsValue(jp);
+                return true;
+            } catch (IOException e) {
+                close();
+                JsonLocation location = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getLocation() : null;
+                if (location == null) {
+                    throw parseError(e, -1L, -1L, -1L);
+                }
+                throw parseError(e, location.getLineNr(), location.getColumnNr(), location.getByteOffset());
+            }
+        }
+
+        @Override
+        public JsValue next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JsValue value = next;
+            next = null;
+            return value;
+        }
+
+        private void close() {
+            done = true;
+            try {
+                jp.close();
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.reactivecouchbase.json;
+
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+// Writes the compact json text of a value in a single StringBuilder. Strings and keys are escaped like
+// Jackson does (short escapes for the usual control characters, unicode escapes for the other ones), runs of
+// characters that don't need escaping are copied in bulk.
+final class JsonStringWriter {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    // escape to use for each ascii character, 0 when it can be written as is and 'u' for a unicode escape
+    private static final char[] ESCAPES = new char[128];
+
+    static {
+        for (int i = 0; i < 32; i++) {
+            ESCAPES[i] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+    }
+
+    private JsonStringWriter() {
+    }
+
+    // strings are built in the reusable buffer of the thread, see OutputBuffers
+    static String write(JsValue value) {
+        OutputBuffers.BufferWriter out = OutputBuffers.acquire();
+        try {
+            write(value, out.builder, null);
+            return out.toString();
+        } finally {
+            OutputBuffers.release(out);
+        }
+    }
+
+    // parts collects the output of the memoized node being cached, see Memo
+    private static void write(JsValue value, StringBuilder builder, Memo.Collector parts) {
+        Memo memo = Memo.of(value);
+        if (memo != null) {
+            memo.writeJson(value, builder, parts);
+        } else {
+            writeValue(value, builder, parts);
+        }
+    }
+
+    // the value itself, without looking at its memo
+    static void writeValue(JsValue value, StringBuilder builder, Memo.Collector parts) {
+        if (value instanceof LazyJsObject && ((LazyJsObject) value).isCompact()) {
+            builder.append(((LazyJsObject) value).raw());
+        } else if (value instanceof JsObject) {
+            builder.append('{');
+            writeFields((JsObject) value, builder, parts);
+            builder.append('}');
+        } else if (value instanceof JsArray) {
+            writeArray(((JsArray) value).values, builder, parts);
+        } else if (value instanceof JsString) {
+            writeString(((JsString) value).value, builder);
+        } else if (value instanceof JsNumber) {
+            JsNumber number = (JsNumber) value;
+            if (number.isLong()) {
+                builder.append(number.value.longValue());
+            } else {
+                builder.append(number.value.toPlainString());
+            }
+        } else if (value instanceof JsBoolean) {
+            builder.append(Boolean.TRUE.equals(((JsBoolean) value).value) ? "true" : "false");
+        } else if (value instanceof JsNull) {
+            builder.append("null");
+        } else if (value instanceof JsUndefined) {
+            builder.append("undefined");
+        }
+    }
+
+    // the fields of the object, without the braces
+    static void writeFields(JsObject object, StringBuilder builder) {
+        writeFields(object, builder, null);
+    }
+
+    private static void writeFields(JsObject object, StringBuilder builder, Memo.Collector parts) {
+        boolean first = true;
+        for (Map.Entry<String, JsValue> field : object.values.entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            writeString(field.getKey(), builder);
+            builder.append(':');
+            write(field.getValue(), builder, parts);
+        }
+    }
+
+    private static void writeArray(List<JsValue> values, StringBuilder builder, Memo.Collector parts) {
+        builder.append('[');
+        if (values instanceof RandomAccess) {
+            for (int i = 0, size = values.size(); i < size; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                write(values.get(i), builder, parts);
+            }
+        } else {
+            boolean first = true;
+            for (JsValue element : values) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                write(element, builder, parts);
+            }
+        }
+        builder.append(']');
+    }
+
+    static void writeString(String value, StringBuilder builder) {
+        builder.append('"');
+        int length = value.length();
+        int run = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            char escape = c < 128 ? ESCAPES[c] : 0;
+            if (escape == 0) {
+                continue;
+            }
+            if (run < i) {
+                builder.append(value, run, i);
+            }
+            builder.append('\\').append(escape);
+            if (escape == 'u') {
+                builder.append('0').append('0').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+            run = i + 1;
+        }
+        if (run == 0) {
+            builder.append(value);
+        } else if (run < length) {
+            builder.append(value, run, length);
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,501 @@
+package org.reactivecouchbase.json;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.reactivecouchbase.common.Throwables;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// A JsObject over the raw UTF-8 bytes of a document. Parsing indexes the fields of the top level object in the
+// same pass that checks the syntax of the whole document, nested objects are only indexed the first time one
+// of their fields is accessed, and child values are decoded the first time they are accessed. An object that
+// is not modified and whose bytes are already in the form the writers output is written back by copying them.
+final class LazyJsObject extends JsObject {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte COMPACT = 1;
+    private static final byte NOT_COMPACT = 2;
+
+    private final LazyFields fields;
+    // whether the original bytes are what the writers would output, computed on first use (see isCompact)
+    private byte compact = UNKNOWN;
+
+    private LazyJsObject(LazyFields fields) {
+        super(fields);
+        this.fields = fields;
+    }
+
+    // like Json.parse, the content after the first value is not read
+    static JsValue parse(byte[] data, int offset, int length) {
+        int start = skipWhitespaces(data, offset, offset + length);
+        if (start == offset + length) {
+            // fails with the same error as Json.parse
+            return Jackson.parseJsValue(data, offset, length);
+        }
+        try (JsonParser jp = Jackson.jsonParser(data, start, offset + length - start)) {
+            long delta = start - firstTokenOffset(jp);
+            return readLazyValue(jp, data, delta);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    // the original bytes are only copied when both writers would output the same bytes for the parsed object :
+    // no whitespace between the tokens, only the escapes the writers use, integers short enough to be written
+    // as longs (other numbers are normalized differently by each writer) and no duplicated key (the last value
+    // wins once parsed). Otherwise the object is written like any other one
+    boolean isCompact() {
+        byte value = compact;
+        if (value == UNKNOWN) {
+            value = !isCanonical(fields.data, fields.start, fields.end) || hasDuplicateKeys() ? NOT_COMPACT : COMPACT;
+            compact = value;
+        }
+        return value == COMPACT;
+    }
+
+    // the original json text of this object
+    String raw() {
+        return new String(fields.data, fields.start, fields.end - fields.start, StandardCharsets.UTF_8);
+    }
+
+    // the original bytes, copied as is by the UTF-8 generators
+    SerializableString rawValue() {
+        return new RawValue(fields.data, fields.start, fields.end);
+    }
+
+    private static int skipWhitespaces(byte[] data, int from, int to) {
+        int i = from;
+        while (i < to && isWhitespace(data[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    // the bytes are known to be valid json. Bytes of multi-byte UTF-8 sequences are all negative, they can't be
+    // taken for a quote, a backslash or a digit
+    private static boolean isCanonical(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                for (i++; data[i] != '"'; i++) {
+                    if (data[i] == '\\') {
+                        if (!isWrittenEscape(data, i + 1)) {
+                            return false;
+                        }
+                        i += data[i + 1] == 'u' ? 5 : 1;
+                    }
+                }
+            } else if (b == '-' || (b >= '0' && b <= '9')) {
+                int digitsStart = b == '-' ? i + 1 : i;
+                int j = digitsStart;
+                while (j < to && data[j] >= '0' && data[j] <= '9') {
+                    j++;
+                }
+                if (j - digitsStart > 18 || (j < to && (data[j] == '.' || data[j] == 'e' || data[j] == 'E'))
+                        || (b == '-' && data[digitsStart] == '0')) {
+                    return false;
+                }
+                i = j - 1;
+            } else if (isWhitespace(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // escape starting at i (after the backslash) as written by JsonStringWriter and Jackson : short escapes for
+    // the usual characters, uppercase unicode escapes for the other control characters
+    private static boolean isWrittenEscape(byte[] data, int i) {
+        byte c = data[i];
+        if (c != 'u') {
+            return c == '"' || c == '\\' || c == 'b' || c == 't' || c == 'f' || c == 'n' || c == 'r';
+        }
+        if (data[i + 1] != '0' || data[i + 2] != '0' || (data[i + 3] != '0' && data[i + 3] != '1')) {
+            return false;
+        }
+        byte last = data[i + 4];
+        int low = last >= '0' && last <= '9' ? last - '0' : last >= 'A' && last <= 'F' ? last - 'A' + 10 : -1;
+        if (low < 0) {
+            return false;
+        }
+        int value = (data[i + 3] - '0') * 16 + low;
+        return value != '\b' && value != '\t' && value != '\n' && value != '\f' && value != '\r';
+    }
+
+    // the bytes have already been parsed once, so the only error left is a duplicated key
+    private boolean hasDuplicateKeys() {
+        try (JsonParser jp = Jackson.jsonParser(fields.data, fields.start, fields.end - fields.start)) {
+            jp.enable(JsonParser.Feature.STRICT_DUPLICATE_DETECTION);
+            while (jp.nextToken() != null) {
+                // only the tokens are checked
+            }
+            return false;
+        } catch (JsonParseException e) {
+            return true;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    // parsers are always created on the first byte of a value, depending on the Jackson version
+    // locations are relative to that byte or to the beginning of the array, hence the delta
+    private static long firstTokenOffset(JsonParser jp) throws IOException {
+        jp.nextToken();
+        return jp.getTokenLocation().getByteOffset();
+    }
+
+    // objects are indexed as they are read, arrays are read eagerly but their objects are lazy
+    private static JsValue readLazyValue(JsonParser jp, byte[] data, long delta) throws IOException {
+        JsonToken token = jp.getCurrentToken();
+        if (token == null) {
+            throw new IllegalArgumentException("No json content");
+        }
+        if (token.equals(JsonToken.START_OBJECT)) {
+            int objectStart = (int) (jp.getTokenLocation().getByteOffset() + delta);
+            Index index = Index.read(jp, delta);
+            int objectEnd = (int) (jp.getTokenLocation().getByteOffset() + delta + 1);
+            return new LazyJsObject(new LazyFields(data, objectStart, objectEnd, index));
+        }
+        if (token.equals(JsonToken.START_ARRAY)) {
+            List<JsValue> values = new ArrayList<>();
+            while (jp.nextToken() != JsonToken.END_ARRAY) {
+                values.add(readLazyValue(jp, data, delta));
+            }
+            return new JsArray(values);
+        }
+        return Jackson.readScalar(jp);
+    }
+
+    // the fields of an object : keys, offsets of the values in the bytes and values already decoded
+    private static final class Index implements Serializable {
+
+        // above this number of fields, keys are looked up through a hash index instead of a linear scan
+        private static final int LINEAR_LOOKUP_THRESHOLD = 8;
+
+        private final int size;
+        private final String[] keys;
+        private final int[] starts;
+        // end of the objects and arrays, their values are read from these bounds
+        private final int[] ends;
+        // written without synchronization, decoded values are immutable so racing threads can at worst
+        // decode the same value twice
+        private final JsValue[] decoded;
+        private final Map<String, Integer> lookup;
+
+        private Index(int size, String[] keys, int[] starts, int[] ends, JsValue[] decoded, Map<String, Integer> lookup) {
+            this.size = size;
+            this.keys = keys;
+            this.starts = starts;
+            this.ends = ends;
+            this.decoded = decoded;
+            this.lookup = size > LINEAR_LOOKUP_THRESHOLD ? lookup : null;
+        }
+
+        // reads the fields of the object starting at the current token, up to its end
+        static Index read(JsonParser jp, long delta) throws IOException {
+            int size = 0;
+            String[] keys = new String[8];
+            int[] starts = new int[8];
+            int[] ends = new int[8];
+            JsValue[] values = new JsValue[8];
+            Map<String, Integer> lookup = new HashMap<>();
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String key = FieldNames.canonical(jp.getCurrentName());
+                JsonToken token = jp.nextToken();
+                int start = (int) (jp.getTokenLocation().getByteOffset() + delta);
+                int end = -1;
+                // numbers, booleans and nulls are cheap to build and can't be parsed
+                // again later as a root value without the bytes that follow them
+                JsValue value = null;
+                if (token.equals(JsonToken.START_OBJECT) || token.equals(JsonToken.START_ARRAY)) {
+                    jp.skipChildren();
+                    end = (int) (jp.getTokenLocation().getByteOffset() + delta + 1);
+                } else if (!token.equals(JsonToken.VALUE_STRING)) {
+                    value = Jackson.readScalar(jp);
+                }
+                Integer previous = lookup.putIfAbsent(key, size);
+                int i = previous == null ? size++ : previous;
+                if (i == keys.length) {
+                    keys = Arrays.copyOf(keys, 2 * i);
+                    starts = Arrays.copyOf(starts, 2 * i);
+                    ends = Arrays.copyOf(ends, 2 * i);
+                    values = Arrays.copyOf(values, 2 * i);
+                }
+                // duplicated keys keep their first position, the last value wins
+                keys[i] = key;
+                starts[i] = start;
+                ends[i] = end;
+                values[i] = value;
+            }
+            return new Index(size, keys, starts, ends, values, lookup);
+        }
+    }
+
+    private static final class LazyFields extends AbstractMap<String, JsValue> implements Serializable {
+
+        private final byte[] data;
+        private final int start;
+        private final int end;
+        // built on first access for nested objects, racing threads can at worst build it twice
+        private Index index;
+
+        private LazyFields(byte[] data, int start, int end, Index index) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.index = index;
+        }
+
+        private Index index() {
+            Index fields = index;
+            if (fields == null) {
+                try (JsonParser jp = Jackson.jsonParser(data, start, end - start)) {
+                    fields = Index.read(jp, start - firstTokenOffset(jp));
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+                index = fields;
+            }
+            return fields;
+        }
+
+        private int indexOf(Object key) {
+            Index fields = index();
+            if (fields.lookup != null) {
+                Integer i = fields.lookup.get(key);
+                return i == null ? -1 : i;
+            }
+            for (int i = 0; i < fields.size; i++) {
+                if (fields.keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private JsValue valueAt(int i) {
+            Index fields = index();
+            JsValue value = fields.decoded[i];
+            if (value == null) {
+                value = decode(fields.starts[i], fields.ends[i]);
+                fields.decoded[i] = value;
+            }
+            return value;
+        }
+
+        // objects get their own index when first accessed, strings and arrays are read right away
+        private JsValue decode(int offset, int valueEnd) {
+            if (data[offset] == '{') {
+                return new LazyJsObject(new LazyFields(data, offset, valueEnd, null));
+            }
+            int to = valueEnd < 0 ? end : valueEnd;
+            try (JsonParser jp = Jackson.jsonParser(data, offset, to - offset)) {
+                long delta = offset - firstTokenOffset(jp);
+                return readLazyValue(jp, data, delta);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        @Override
+        public JsValue get(Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : valueAt(i);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return index().size;
+        }
+
+        @Override
+        public Set<Entry<String, JsValue>> entrySet() {
+            return new AbstractSet<Entry<String, JsValue>>() {
+                @Override
+                public Iterator<Entry<String, JsValue>> iterator() {
+                    return new Iterator<Entry<String, JsValue>>() {
+                        private final int size = index().size;
+                        private int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < size;
+                        }
+
+                        @Override
+                        public Entry<String, JsValue> next() {
+                            if (i >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            return new LazyEntry(i++);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return index().size;
+                }
+            };
+        }
+
+        // the value is only decoded when asked for, iterating over the keys doesn't decode anything
+        private final class LazyEntry implements Entry<String, JsValue> {
+
+            private final int i;
+
+            private LazyEntry(int i) {
+                this.i = i;
+            }
+
+            @Override
+            public String getKey() {
+                return index().keys[i];
+            }
+
+            @Override
+            public JsValue getValue() {
+                return valueAt(i);
+            }
+
+            @Override
+            public JsValue setValue(JsValue value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof Entry)) {
+                    return false;
+                }
+                Entry<?, ?> entry = (Entry<?, ?>) o;
+                return getKey().equals(entry.getKey()) && getValue().equals(entry.getValue());
+            }
+
+            @Override
+            public int hashCode() {
+                return getKey().hashCode() ^ getValue().hashCode();
+            }
+        }
+    }
+
+    // json text written as is : the unquoted forms are the original bytes, copied without decoding them.
+    // Quoted forms are never used for raw values, they go through a SerializedString
+    private static final class RawValue implements SerializableString {
+
+        private final byte[] data;
+        private final int start;
+        private final int length;
+
+        private RawValue(byte[] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.length = end - start;
+        }
+
+        @Override
+        public String getValue() {
+            return new String(data, start, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int charLength() {
+            return getValue().length();
+        }
+
+        @Override
+        public byte[] asUnquotedUTF8() {
+            return Arrays.copyOfRange(data, start, start + length);
+        }
+
+        @Override
+        public int appendUnquotedUTF8(byte[] buffer, int offset) {
+            if (offset + length > buffer.length) {
+                return -1;
+            }
+            System.arraycopy(data, start, buffer, offset, length);
+            return length;
+        }
+
+        @Override
+        public int appendUnquoted(char[] buffer, int offset) {
+            String value = getValue();
+            if (offset + value.length() > buffer.length) {
+                return -1;
+            }
+            value.getChars(0, value.length(), buffer, offset);
+            return value.length();
+        }
+
+        @Override
+        public int writeUnquotedUTF8(OutputStream out) throws IOException {
+            out.write(data, start, length);
+            return length;
+        }
+
+        @Override
+        public int putUnquotedUTF8(ByteBuffer buffer) {
+            if (length > buffer.remaining()) {
+                return -1;
+            }
+            buffer.put(data, start, length);
+            return length;
+        }
+
+        @Override
+        public char[] asQuotedChars() {
+            return new SerializedString(getValue()).asQuotedChars();
+        }
+
+        @Override
+        public byte[] asQuotedUTF8() {
+            return new SerializedString(getValue()).asQuotedUTF8();
+        }
+
+        @Override
+        public int appendQuotedUTF8(byte[] buffer, int offset) {
+            return new SerializedString(getValue()).appendQuotedUTF8(buffer, offset);
+        }
+
+        @Override
+        public int appendQuoted(char[] buffer, int offset) {
+            return new SerializedString(getValue()).appendQuoted(buffer, offset);
+        }
+
+        @Override
+        public int writeQuotedUTF8(OutputStream out) throws IOException {
+            return new SerializedString(getValue()).writeQuotedUTF8(out);
+        }
+
+        @Override
+        public int putQuotedUTF8(ByteBuffer buffer) throws IOException {
+            return new SerializedString(getValue()).putQuotedUTF8(buffer);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.reactivecouchbase.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a file through memory mapped windows that slide along it, so files bigger than a single
+// mapping (2GB) can be read and the content is only copied from the page cache to the small
+// buffers of the reader. Mappings are released by the GC once the window has moved on.
+final class MappedFileInputStream extends InputStream {
+
+    private static final long WINDOW_SIZE = 256L * 1024L * 1024L;
+
+    private final FileChannel channel;
+    private final long size;
+    private long windowStart = 0L;
+    private MappedByteBuffer window;
+
+    MappedFileInputStream(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    private boolean ensureWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        long next = window == null ? 0L : windowStart + window.capacity();
+        if (next >= size) {
+            return false;
+        }
+        windowStart = next;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(WINDOW_SIZE, size - next));
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) {
+            return -1;
+        }
+        return window.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        int read = Math.min(length, window.remaining());
+        window.get(bytes, offset, read);
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return window == null ? 0 : window.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,283 @@
+package org.reactivecouchbase.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Cached hash code and serialized forms of a memoized object or array. The node being immutable the cache
+// is never invalidated. Fields are written without synchronization, like String.hash : racing threads can
+// at worst compute the same value twice.
+// Serialized forms are only cached by the nodes whose output is at least MIN_CACHED_SIZE chars long, and a
+// cached form doesn't hold the output of the cached children of the node : it is made of the text of the
+// node itself and of the Parts of these children, shared with them. Each char of a document is then kept by
+// its closest cached ancestor only. Nodes whose own text is longer than the budget are not cached, they are
+// written again every time, straight into the output of their parent.
+final class Memo implements Serializable {
+
+    static final int DEFAULT_BUDGET = 64 * 1024;
+    // smaller outputs are written again by the closest cached ancestor, caching them would cost more than it saves
+    static final int MIN_CACHED_SIZE = 256;
+
+    private final int budget;
+    int hash;
+    // output of toJsonString, and compact output of the Jackson serializer
+    private transient Parts json;
+    private transient Parts serialized;
+    // set once the output is known to be too small or too big to be cached
+    private transient boolean jsonUncached = false;
+    private transient boolean serializedUncached = false;
+
+    Memo(int budget) {
+        this.budget = budget;
+    }
+
+    // the memo of the value, null if it is not memoized
+    static Memo of(JsValue value) {
+        if (value instanceof MemoizedJsObject) {
+            return ((MemoizedJsObject) value).memo;
+        }
+        if (value instanceof MemoizedJsArray) {
+            return ((MemoizedJsArray) value).memo;
+        }
+        return null;
+    }
+
+    // memoized copy of the value and of all its children
+    static JsValue memoize(JsValue value, int budget) {
+        if (value instanceof MemoizedJsObject || value instanceof MemoizedJsArray) {
+            return value;
+        }
+        if (value instanceof JsObject) {
+            // keeps the order of the fields, so that the output doesn't change
+            Map<String, JsValue> fields = ((JsObject) value).values;
+            FieldsBuilder values = new FieldsBuilder(fields.size());
+            for (Map.Entry<String, JsValue> field : fields.entrySet()) {
+                values.put(field.getKey(), memoize(field.getValue(), budget));
+            }
+            return new MemoizedJsObject(values.build(), budget);
+        }
+        if (value instanceof JsArray) {
+            List<JsValue> values = new ArrayList<>(((JsArray) value).values.size());
+            for (JsValue element : ((JsArray) value).values) {
+                values.add(memoize(element, budget));
+            }
+            return new MemoizedJsArray(values, budget);
+        }
+        return value;
+    }
+
+    private boolean cacheable(Collector own, int end) {
+        return end - own.start >= MIN_CACHED_SIZE && own.textLength(end) <= budget;
+    }
+
+    // appends the toJsonString output of the owner. enclosing collects the output of the closest memoized
+    // ancestor whose output isn't known yet, null if there is none
+    void writeJson(JsValue owner, StringBuilder builder, Collector enclosing) {
+        Parts cached = json;
+        if (cached != null) {
+            int start = builder.length();
+            cached.appendTo(builder);
+            if (enclosing != null) {
+                enclosing.splice(start, builder.length(), cached);
+            }
+        } else if (jsonUncached) {
+            JsonStringWriter.writeValue(owner, builder, enclosing);
+        } else {
+            // written in place, the parts are cut from the builder afterwards
+            Collector own = new Collector(builder, builder.length());
+            JsonStringWriter.writeValue(owner, builder, own);
+            int end = builder.length();
+            if (cacheable(own, end)) {
+                cached = own.parts(end, false);
+                json = cached;
+                if (enclosing != null) {
+                    enclosing.splice(own.start, end, cached);
+                }
+            } else {
+                jsonUncached = true;
+                if (enclosing != null) {
+                    enclosing.addAll(own);
+                }
+            }
+        }
+    }
+
+    // writes the compact Jackson output of the owner. When enclosing is not null, json is the generator
+    // collecting the output of an ancestor : the cached output of the children is not written to it, it is
+    // only referenced by the parts of the ancestor
+    void writeSerialized(JsValue owner, JsonGenerator json, Collector enclosing) throws IOException {
+        Parts cached = serialized;
+        if (cached != null) {
+            // writes the separator before the value, if any
+            json.writeRawValue("");
+            if (enclosing == null) {
+                cached.writeTo(json);
+            } else {
+                json.flush();
+                int position = enclosing.builder.length();
+                enclosing.splice(position, position, cached);
+            }
+        } else if (serializedUncached) {
+            Jackson.writeNode(owner, json, enclosing);
+        } else if (enclosing != null) {
+            json.flush();
+            int start = enclosing.builder.length();
+            Collector own = new Collector(enclosing.builder, start);
+            Jackson.writeNode(owner, json, own);
+            json.flush();
+            char first = enclosing.builder.charAt(start);
+            if (first == ',' || first == ':') {
+                // separator written by the generator before the value, it is not part of it
+                own.start++;
+            }
+            int end = enclosing.builder.length();
+            if (cacheable(own, end)) {
+                cached = own.parts(end, true);
+                serialized = cached;
+                enclosing.splice(own.start, end, cached);
+            } else {
+                serializedUncached = true;
+                enclosing.addAll(own);
+            }
+        } else {
+            OutputBuffers.BufferWriter out = OutputBuffers.acquire();
+            try {
+                JsonGenerator generator = Jackson.compactGenerator(out);
+                Collector own = new Collector(out.builder, 0);
+                Jackson.writeNode(owner, generator, own);
+                generator.close();
+                int end = out.builder.length();
+                json.writeRawValue("");
+                if (cacheable(own, end)) {
+                    cached = own.parts(end, true);
+                    serialized = cached;
+                    cached.writeTo(json);
+                } else {
+                    serializedUncached = true;
+                    own.writeTo(json, end);
+                }
+            } finally {
+                OutputBuffers.release(out);
+            }
+        }
+    }
+
+    // cached output of a node : its own text (String for toJsonString, SerializedString for Jackson, that also
+    // keeps the UTF-8 bytes) and the Parts of its cached children
+    static final class Parts {
+
+        private final Object[] parts;
+
+        private Parts(Object[] parts) {
+            this.parts = parts;
+        }
+
+        void appendTo(StringBuilder builder) {
+            for (Object part : parts) {
+                if (part instanceof Parts) {
+                    ((Parts) part).appendTo(builder);
+                } else {
+                    builder.append((String) part);
+                }
+            }
+        }
+
+        void writeTo(JsonGenerator json) throws IOException {
+            for (Object part : parts) {
+                if (part instanceof Parts) {
+                    ((Parts) part).writeTo(json);
+                } else {
+                    json.writeRaw((SerializableString) part);
+                }
+            }
+        }
+    }
+
+    // output of a node being written : the text written to the builder from start, except for the ranges
+    // of the spliced children, in order, which are the outputs of cached children
+    static final class Collector {
+
+        private final StringBuilder builder;
+        private int start;
+        private int count = 0;
+        private int[] starts = new int[4];
+        private int[] ends = new int[4];
+        private Parts[] children = new Parts[4];
+
+        private Collector(StringBuilder builder, int start) {
+            this.builder = builder;
+            this.start = start;
+        }
+
+        private void splice(int from, int to, Parts child) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+                children = Arrays.copyOf(children, 2 * count);
+            }
+            starts[count] = from;
+            ends[count] = to;
+            children[count] = child;
+            count++;
+        }
+
+        // the children spliced in a node that isn't cached belong to the node being collected
+        private void addAll(Collector other) {
+            for (int i = 0; i < other.count; i++) {
+                splice(other.starts[i], other.ends[i], other.children[i]);
+            }
+        }
+
+        // length of the text of the node itself
+        private int textLength(int end) {
+            int length = end - start;
+            for (int i = 0; i < count; i++) {
+                length -= ends[i] - starts[i];
+            }
+            return length;
+        }
+
+        private Parts parts(int end, boolean serialized) {
+            List<Object> parts = new ArrayList<>(2 * count + 1);
+            int position = start;
+            for (int i = 0; i < count; i++) {
+                if (starts[i] > position) {
+                    parts.add(text(position, starts[i], serialized));
+                }
+                parts.add(children[i]);
+                position = ends[i];
+            }
+            if (end > position) {
+                parts.add(text(position, end, serialized));
+            }
+            return new Parts(parts.toArray());
+        }
+
+        private Object text(int from, int to, boolean serialized) {
+            String text = builder.substring(from, to);
+            return serialized ? new SerializedString(text) : text;
+        }
+
+        // writes the output of a node that is not cached
+        private void writeTo(JsonGenerator json, int end) throws IOException {
+            int position = start;
+            for (int i = 0; i < count; i++) {
+                if (starts[i] > position) {
+                    json.writeRaw(builder.substring(position, starts[i]));
+                }
+                children[i].writeTo(json);
+                position = ends[i];
+            }
+            if (end > position) {
+                json.writeRaw(builder.substring(position, end));
+            }
+        }
+    }
+}
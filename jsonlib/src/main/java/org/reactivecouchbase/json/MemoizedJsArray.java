@@ -0,0 +1,29 @@
+package org.reactivecouchbase.json;
+
+import java.util.List;
+
+// JsArray returned by memoize, see Memo
+final class MemoizedJsArray extends JsArray {
+
+    final Memo memo;
+
+    MemoizedJsArray(List<JsValue> values, int budget) {
+        super(values);
+        this.memo = new Memo(budget);
+    }
+
+    @Override
+    public JsArray memoize(int budget) {
+        return this;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = memo.hash;
+        if (hash == 0) {
+            hash = super.hashCode();
+            memo.hash = hash;
+        }
+        return hash;
+    }
+}
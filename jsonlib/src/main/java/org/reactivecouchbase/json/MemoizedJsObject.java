@@ -0,0 +1,29 @@
+package org.reactivecouchbase.json;
+
+import java.util.Map;
+
+// JsObject returned by memoize, see Memo
+final class MemoizedJsObject extends JsObject {
+
+    final Memo memo;
+
+    MemoizedJsObject(Map<String, JsValue> values, int budget) {
+        super(values);
+        this.memo = new Memo(budget);
+    }
+
+    @Override
+    public JsObject memoize(int budget) {
+        return this;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = memo.hash;
+        if (hash == 0) {
+            hash = super.hashCode();
+            memo.hash = hash;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,121 @@
+package org.reactivecouchbase.json;
+
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// Per thread output buffer reused by the methods returning json strings, so that the buffer doesn't start
+// from scratch and get copied at every doubling on each call. Buffers that grew above MAX_RETAINED_CHARS
+// are dropped after use instead of being retained, and nothing is retained by virtual threads, there can be
+// far too many of them. Nested calls (a value written while another one is) get the nested buffers of the
+// thread, up to MAX_NESTED levels. Jackson already recycles its own internal buffers per thread.
+final class OutputBuffers {
+
+    private static final int INITIAL_CHARS = 1024;
+    private static final int MAX_RETAINED_CHARS = 256 * 1024;
+    private static final int MAX_NESTED = 4;
+
+    private static final ThreadLocal<BufferWriter> writers = new ThreadLocal<>();
+    // Thread.isVirtual, only available from Java 21, resolved once
+    private static final MethodHandle isVirtual = isVirtualHandle();
+
+    private OutputBuffers() {
+    }
+
+    // to be released once the output has been read from it
+    static BufferWriter acquire() {
+        if (isVirtualThread()) {
+            return new BufferWriter();
+        }
+        BufferWriter writer = writers.get();
+        if (writer == null) {
+            writer = new BufferWriter();
+            writers.set(writer);
+        }
+        int depth = 0;
+        while (writer.inUse) {
+            // nested call, while the buffer of the thread is being written
+            if (writer.nested == null) {
+                if (depth == MAX_NESTED) {
+                    return new BufferWriter();
+                }
+                writer.nested = new BufferWriter();
+            }
+            writer = writer.nested;
+            depth++;
+        }
+        writer.inUse = true;
+        return writer;
+    }
+
+    static void release(BufferWriter writer) {
+        writer.inUse = false;
+        if (writer.builder.capacity() > MAX_RETAINED_CHARS) {
+            writer.builder = new StringBuilder(INITIAL_CHARS);
+        } else {
+            writer.builder.setLength(0);
+        }
+    }
+
+    private static MethodHandle isVirtualHandle() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVirtualThread() {
+        if (isVirtual == null) {
+            return false;
+        }
+        try {
+            return (boolean) isVirtual.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    static final class BufferWriter extends Writer {
+
+        StringBuilder builder = new StringBuilder(INITIAL_CHARS);
+        private boolean inUse = false;
+        // buffer of the calls nested in the one using this buffer
+        private BufferWriter nested;
+
+        @Override
+        public void write(int c) {
+            builder.append((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            builder.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+            builder.append(str, offset, offset + length);
+        }
+
+        @Override
+        public Writer append(CharSequence csq) {
+            builder.append(csq);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+}
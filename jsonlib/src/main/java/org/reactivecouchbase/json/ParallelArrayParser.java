@@ -0,0 +1,271 @@
+package org.reactivecouchbase.json;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.reactivecouchbase.common.Throwables;
+import org.reactivecouchbase.json.exceptions.JsParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Parses a top level json array on several threads. A sequential pre-scan finds the boundaries of the
+// elements (it only tracks strings, escapes and nesting depth), then ranges of elements are parsed by
+// fork/join tasks directly into their slots of the result, each element with a Jackson parser over its own
+// bytes. Streams are read by blocks : the elements of a block are parsed while the next blocks are scanned,
+// so only the blocks being parsed are kept in memory.
+final class ParallelArrayParser {
+
+    // ranges smaller than that are not split any further
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    // size of the blocks read from a stream, a block holds at least one whole element
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private byte[] data;
+    // offset of data[0] in the input, for the errors
+    private long base = 0L;
+    // next byte to scan
+    private int position = 0;
+    private boolean started = false;
+    private boolean ended = false;
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+    private int elementStart = -1;
+    private int lastNonWhitespace = -1;
+    private long total = 0L;
+    private int[] starts = new int[1024];
+    private int[] ends = new int[1024];
+    private int count = 0;
+
+    private ParallelArrayParser(byte[] data) {
+        this.data = data;
+    }
+
+    static JsArray parse(byte[] data, ForkJoinPool pool) {
+        ParallelArrayParser parser = new ParallelArrayParser(data);
+        parser.scan(data.length);
+        parser.checkEnd();
+        ParseRange task = parser.task();
+        if (task.to > 0) {
+            pool.invoke(task);
+        }
+        return new JsArray(Arrays.asList(task.values));
+    }
+
+    // the stream is read by the calling thread, that also waits for the oldest blocks when too many of
+    // them are being parsed
+    static JsArray parse(InputStream in, ForkJoinPool pool) throws IOException {
+        ParallelArrayParser parser = new ParallelArrayParser(new byte[BLOCK_SIZE]);
+        int maxPending = Math.max(2, 2 * pool.getParallelism());
+        Deque<ParseRange> pending = new ArrayDeque<>();
+        List<JsValue> values = new ArrayList<>();
+        int limit = 0;
+        int read = in.read(parser.data, limit, parser.data.length - limit);
+        while (read >= 0) {
+            limit += read;
+            parser.scan(limit);
+            if (limit == parser.data.length) {
+                if (parser.count > 0) {
+                    ParseRange task = parser.task();
+                    pool.execute(task);
+                    pending.add(task);
+                    if (pending.size() > maxPending) {
+                        values.addAll(pending.poll().result());
+                    }
+                }
+                limit = parser.nextBlock(limit);
+            }
+            read = in.read(parser.data, limit, parser.data.length - limit);
+        }
+        parser.checkEnd();
+        if (parser.count > 0) {
+            ParseRange task = parser.task();
+            pool.execute(task);
+            pending.add(task);
+        }
+        while (!pending.isEmpty()) {
+            values.addAll(pending.poll().result());
+        }
+        return new JsArray(values);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    // scans the bytes up to limit, the state is kept between calls
+    private void scan(int limit) {
+        byte[] data = this.data;
+        int i = position;
+        if (!started) {
+            while (i < limit && isWhitespace(data[i])) {
+                i++;
+            }
+            if (i == limit) {
+                position = i;
+                return;
+            }
+            if (data[i] != '[') {
+                throw new JsParseException("Expected a top level array", null, -1L, -1L, base + i);
+            }
+            started = true;
+            i++;
+        }
+        for (; i < limit; i++) {
+            byte b = data[i];
+            if (ended) {
+                if (!isWhitespace(b)) {
+                    throw new JsParseException("Unexpected content after the json array", null, -1L, -1L, base + i);
+                }
+                continue;
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                lastNonWhitespace = i;
+                continue;
+            }
+            if (isWhitespace(b)) {
+                continue;
+            }
+            if (depth == 0 && (b == ',' || b == ']')) {
+                if (elementStart >= 0) {
+                    add(elementStart, lastNonWhitespace + 1);
+                } else if (b == ',' || total > 0) {
+                    throw new JsParseException("Missing array element", null, -1L, -1L, base + i);
+                }
+                elementStart = -1;
+                ended = b == ']';
+                continue;
+            }
+            if (depth == 0 && elementStart < 0) {
+                elementStart = i;
+            }
+            if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+            lastNonWhitespace = i;
+        }
+        position = i;
+    }
+
+    private void checkEnd() {
+        if (!started) {
+            throw new JsParseException("Expected a top level array", null, -1L, -1L, base + position);
+        }
+        if (!ended) {
+            throw new JsParseException("Unexpected end of input", null, -1L, -1L, base + position);
+        }
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+        total++;
+    }
+
+    // task parsing the elements found so far, they are not tracked by the parser anymore
+    private ParseRange task() {
+        ParseRange task = new ParseRange(data, base, starts, ends, new JsValue[count], 0, count);
+        starts = new int[starts.length];
+        ends = new int[ends.length];
+        count = 0;
+        return task;
+    }
+
+    // the full block belongs to a task now, the bytes of the element being scanned (if any) move to the
+    // beginning of a new block, returns their length
+    private int nextBlock(int limit) {
+        int carried = elementStart >= 0 ? elementStart : limit;
+        int length = limit - carried;
+        byte[] block = new byte[Math.max(BLOCK_SIZE, 2 * length)];
+        System.arraycopy(data, carried, block, 0, length);
+        data = block;
+        base += carried;
+        position -= carried;
+        if (elementStart >= 0) {
+            elementStart -= carried;
+            lastNonWhitespace -= carried;
+        }
+        return length;
+    }
+
+    private static final class ParseRange extends RecursiveAction {
+
+        private final byte[] data;
+        private final long base;
+        private final int[] starts;
+        private final int[] ends;
+        private final JsValue[] values;
+        private final int from;
+        private final int to;
+
+        private ParseRange(byte[] data, long base, int[] starts, int[] ends, JsValue[] values, int from, int to) {
+            this.data = data;
+            this.base = base;
+            this.starts = starts;
+            this.ends = ends;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1 || ends[to - 1] - starts[from] <= MIN_CHUNK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    values[i] = parseElement(starts[i], ends[i]);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseRange(data, base, starts, ends, values, from, middle),
+                        new ParseRange(data, base, starts, ends, values, middle, to));
+            }
+        }
+
+        // parsed in place, the bytes of the element must hold a single value
+        private JsValue parseElement(int start, int end) {
+            try (JsonParser jp = Jackson.jsonParser(data, start, end - start)) {
+                JsValue value = Jackson.readJsValue(jp);
+                if (jp.nextToken() != null) {
+                    throw new JsParseException("Invalid array element at offset " + (base + start), null, -1L, -1L, base + start);
+                }
+                return value;
+            } catch (JsonProcessingException e) {
+                // the location of Jackson is relative to the element, line and column are unknown here
+                JsonLocation location = e.getLocation();
+                long offset = base + start + (location == null || location.getByteOffset() < 0L ? 0L : location.getByteOffset());
+                throw new JsParseException("Invalid array element at offset " + (base + start) + " : " + e.getOriginalMessage(), e, -1L, -1L, offset);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        private List<JsValue> result() {
+            join();
+            return Arrays.asList(values);
+        }
+    }
+}
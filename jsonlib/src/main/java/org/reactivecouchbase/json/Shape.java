@@ -0,0 +1,156 @@
+package org.reactivecouchbase.json;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Key layout shared by the objects that have the same keys in the same order, like the rows of a query
+// result, so that each object only stores its values (see ArrayFieldMap). Shapes are reached from EMPTY
+// through transitions, one per added key, that are cached so objects built the same way end up with the same
+// shape. The cache is bounded to survive objects used as maps with arbitrary keys : past the limit of
+// transitions of a shape, new shapes are still created but not shared, and like FieldNames the whole cache
+// starts over once it holds too many shapes.
+final class Shape {
+
+    static final Shape EMPTY = new Shape(new String[0], true);
+
+    static final int MAX_TRANSITIONS = 256;
+    // the first keys of all the objects
+    static final int MAX_ROOT_TRANSITIONS = 4096;
+    static final int MAX_SHAPES = 64 * 1024;
+    // above that, lookups use an index table instead of a linear scan
+    private static final int LINEAR_LOOKUP_SIZE = 8;
+
+    private static final AtomicInteger shapes = new AtomicInteger();
+
+    final String[] keys;
+    // index + 1 of the key in each slot, open addressing with linear probing
+    private final int[] table;
+    // null when the shape is not shared
+    private final Map<String, Shape> transitions;
+
+    private Shape(String[] keys, boolean shared) {
+        this.keys = keys;
+        this.table = keys.length > LINEAR_LOOKUP_SIZE ? table(keys) : null;
+        this.transitions = shared ? new ConcurrentHashMap<>() : null;
+    }
+
+    private static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] table(String[] keys) {
+        int[] table = new int[Integer.highestOneBit(keys.length * 2 - 1) << 1];
+        int mask = table.length - 1;
+        for (int index = 0; index < keys.length; index++) {
+            int i = hash(keys[index]) & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = index + 1;
+        }
+        return table;
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    int indexOf(Object key) {
+        if (table == null) {
+            // identical strings first, field names are usually canonical instances (see FieldNames)
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            if (key == null) {
+                return -1;
+            }
+            int hash = key.hashCode();
+            for (int i = 0; i < keys.length; i++) {
+                String k = keys[i];
+                if (k != null && k.hashCode() == hash && k.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int slot = table[i];
+            if (slot == 0) {
+                return -1;
+            }
+            String k = keys[slot - 1];
+            if (k == key || (k != null && k.equals(key))) {
+                return slot - 1;
+            }
+        }
+    }
+
+    // shape of a single key, that is not shared
+    static Shape single(String key) {
+        return new Shape(new String[]{key}, false);
+    }
+
+    // shape of the keys that is not shared and doesn't add any transition, the array is owned by the shape
+    static Shape unshared(String[] keys) {
+        return new Shape(keys, false);
+    }
+
+    // shape with the key added at the end, the key must not be part of this shape
+    Shape with(String key) {
+        Shape next = sharedWith(key);
+        if (next != null) {
+            return next;
+        }
+        String[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+        newKeys[keys.length] = key;
+        return new Shape(newKeys, false);
+    }
+
+    // shared shape with the key added at the end, null if this shape isn't shared or the transition can't be
+    // cached. ConcurrentHashMap doesn't take null keys, such shapes are not shared either
+    Shape sharedWith(String key) {
+        if (transitions == null || key == null) {
+            return null;
+        }
+        Shape next = transitions.get(key);
+        if (next != null || transitions.size() >= (this == EMPTY ? MAX_ROOT_TRANSITIONS : MAX_TRANSITIONS)) {
+            return next;
+        }
+        if (shapes.incrementAndGet() > MAX_SHAPES) {
+            // objects keep their shapes, only the new ones stop sharing with them
+            EMPTY.transitions.clear();
+            shapes.set(0);
+        }
+        return transitions.computeIfAbsent(key, k -> {
+            String[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+            newKeys[keys.length] = k;
+            return new Shape(newKeys, true);
+        });
+    }
+
+    // shape of the keys, shared when possible. The array is owned by the shape if it is not shared
+    static Shape of(String[] keys, int size) {
+        Shape shape = EMPTY;
+        for (int i = 0; i < size && shape != null; i++) {
+            shape = shape.sharedWith(keys[i]);
+        }
+        return shape != null ? shape : new Shape(size == keys.length ? keys : Arrays.copyOf(keys, size), false);
+    }
+
+    // shape with the key at index removed
+    Shape without(int index) {
+        String[] newKeys = new String[keys.length - 1];
+        System.arraycopy(keys, 0, newKeys, 0, index);
+        System.arraycopy(keys, index + 1, newKeys, index, newKeys.length - index);
+        return of(newKeys, newKeys.length);
+    }
+}
@@ -7,7 +7,6 @@ import java.math.BigInteger;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 public class Syntax {
@@ -173,8 +172,6 @@ public class Syntax {
     }
 
     static Map<String, JsValue> asMap(String name, JsValue value) {
-        Map<String, JsValue> values = new HashMap<String, JsValue>();
-        values.put(name, value);
-        return values;
+        return ArrayFieldMap.of(name, value);
     }
 }
@@ -0,0 +1,520 @@
+package org.reactivecouchbase.json;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+// Persistent hash array mapped trie. Every node has a bitmap of the 32 slots it uses and a compact array of
+// key/value pairs, the key being null when the slot holds a sub node, so a lookup or an update goes through
+// at most 7 levels. Updates copy the path from the root to the changed node and share everything else.
+// Bulk updates (plusAll) use a fresh edit token : the nodes created with that token are not visible to
+// anybody else yet and are modified in place instead of being copied again for every field.
+// Fields keep their insertion order, like in a LinkedHashMap : every value is stored with the sequence number
+// of its key, replacing a value keeps it. The fields are sorted by sequence number the first time a version of
+// the map is iterated, and kept in that order for the next iterations.
+// A null key can't be stored in the nodes, where it marks a sub node : like the other field maps the trie
+// accepts it, and keeps its field next to the root.
+final class TrieFieldMap extends FieldMap {
+
+    private static final TrieFieldMap EMPTY = new TrieFieldMap(BitmapNode.EMPTY, null, 0, 0);
+
+    private static final Object NOT_FOUND = new Object();
+
+    private final Node root;
+    // field of the null key, null when there is none
+    private final Field nullField;
+    private final int size;
+    // sequence number of the next key added
+    private final int nextSeq;
+    private Order order;
+    private Set<Entry<String, JsValue>> entrySet;
+
+    private TrieFieldMap(Node root, Field nullField, int size, int nextSeq) {
+        this.root = root;
+        this.nullField = nullField;
+        this.size = size;
+        this.nextSeq = nextSeq;
+    }
+
+    static TrieFieldMap copyOf(Map<String, ? extends JsValue> values) {
+        return EMPTY.plusAll(values);
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public JsValue get(Object key) {
+        if (key == null) {
+            return nullField == null ? null : nullField.value;
+        }
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Object field = root.find(0, hash((String) key), (String) key);
+        return field == NOT_FOUND ? null : ((Field) field).value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null) {
+            return nullField != null;
+        }
+        return key instanceof String && root.find(0, hash((String) key), (String) key) != NOT_FOUND;
+    }
+
+    // same fields, numbered from 0, once the sequence numbers run out
+    private TrieFieldMap renumbered() {
+        return EMPTY.plusAll(this);
+    }
+
+    @Override
+    FieldMap plus(String key, JsValue value) {
+        if (nextSeq == Integer.MAX_VALUE) {
+            return renumbered().plus(key, value);
+        }
+        if (key == null) {
+            return nullField == null
+                    ? new TrieFieldMap(root, new Field(value, nextSeq), size + 1, nextSeq + 1)
+                    : new TrieFieldMap(root, new Field(value, nullField.seq), size, nextSeq);
+        }
+        boolean[] added = new boolean[1];
+        Node newRoot = root.put(null, 0, hash(key), key, value, nextSeq, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return added[0] ? new TrieFieldMap(newRoot, nullField, size + 1, nextSeq + 1) : new TrieFieldMap(newRoot, nullField, size, nextSeq);
+    }
+
+    @Override
+    TrieFieldMap plusAll(Map<String, ? extends JsValue> values) {
+        if (values.isEmpty()) {
+            return this;
+        }
+        if (nextSeq > Integer.MAX_VALUE - values.size()) {
+            return renumbered().plusAll(values);
+        }
+        Object edit = new Object();
+        boolean[] added = new boolean[1];
+        Node newRoot = root;
+        Field newNullField = nullField;
+        int seq = nextSeq;
+        for (Entry<String, ? extends JsValue> entry : values.entrySet()) {
+            String key = entry.getKey();
+            if (key == null) {
+                newNullField = new Field(entry.getValue(), newNullField == null ? seq++ : newNullField.seq);
+                continue;
+            }
+            added[0] = false;
+            newRoot = newRoot.put(edit, 0, hash(key), key, entry.getValue(), seq, added);
+            if (added[0]) {
+                seq++;
+            }
+        }
+        return newRoot == root && newNullField == nullField ? this : new TrieFieldMap(newRoot, newNullField, size + seq - nextSeq, seq);
+    }
+
+    @Override
+    FieldMap minus(String key) {
+        TrieFieldMap map;
+        if (key == null) {
+            if (nullField == null) {
+                return this;
+            }
+            map = new TrieFieldMap(root, null, size - 1, nextSeq);
+        } else {
+            boolean[] removed = new boolean[1];
+            Node newRoot = root.remove(0, hash(key), key, removed);
+            if (!removed[0]) {
+                return this;
+            }
+            map = new TrieFieldMap(newRoot == null ? BitmapNode.EMPTY : newRoot, nullField, size - 1, nextSeq);
+        }
+        if (map.size == 0) {
+            return ArrayFieldMap.EMPTY;
+        }
+        // objects that shrink a lot go back to the compact form. Their keys are what is left of a big object
+        // edited like a map, their shape isn't worth sharing
+        return map.size <= ArrayFieldMap.MAX_SIZE / 2 ? ArrayFieldMap.copyOfUnshared(map) : map;
+    }
+
+    // the fields in insertion order, computed once per version of the map. Racing threads can at worst
+    // compute it twice, its fields are final
+    private Order order() {
+        Order fields = order;
+        if (fields == null) {
+            fields = new Order(root, nullField, size);
+            order = fields;
+        }
+        return fields;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super JsValue> action) {
+        Order fields = order();
+        for (int i = 0; i < size; i++) {
+            action.accept(fields.keys[i], fields.values[i]);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, JsValue>> entrySet() {
+        Set<Entry<String, JsValue>> entries = entrySet;
+        if (entries == null) {
+            entries = new AbstractSet<Entry<String, JsValue>>() {
+                @Override
+                public Iterator<Entry<String, JsValue>> iterator() {
+                    return new EntryIterator(order());
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            entrySet = entries;
+        }
+        return entries;
+    }
+
+    // value of a field and sequence number of its key
+    private static final class Field {
+
+        final JsValue value;
+        final int seq;
+
+        Field(JsValue value, int seq) {
+            this.value = value;
+            this.seq = seq;
+        }
+    }
+
+    private static final class Order {
+
+        final String[] keys;
+        final JsValue[] values;
+
+        Order(Node root, Field nullField, int size) {
+            String[] names = new String[size];
+            Field[] fields = new Field[size];
+            if (root.collect(names, fields, 0) < size) {
+                fields[size - 1] = nullField;
+            }
+            // sequence numbers are distinct, sorted along with the position of their field
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = ((long) fields[i].seq << 32) | i;
+            }
+            Arrays.sort(sorted);
+            keys = new String[size];
+            values = new JsValue[size];
+            for (int i = 0; i < size; i++) {
+                int j = (int) sorted[i];
+                keys[i] = names[j];
+                values[i] = fields[j].value;
+            }
+        }
+    }
+
+    private abstract static class Node {
+
+        // token of the bulk update that created the node, null for nodes of persistent versions
+        final Object edit;
+        Object[] array;
+
+        Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+
+        abstract int pairs();
+
+        // the Field of the key, NOT_FOUND when there is none
+        abstract Object find(int shift, int hash, String key);
+
+        // seq is the sequence number of the key if it is added
+        abstract Node put(Object edit, int shift, int hash, String key, JsValue value, int seq, boolean[] added);
+
+        // null when the node is left empty. Removals are always persistent
+        abstract Node remove(int shift, int hash, String key, boolean[] removed);
+
+        final boolean editable(Object edit) {
+            return edit != null && edit == this.edit;
+        }
+
+        // stores the fields of the node from position n, returns the next position
+        final int collect(String[] keys, Field[] fields, int n) {
+            Object[] a = array;
+            for (int i = 0, end = pairs() * 2; i < end; i += 2) {
+                if (a[i] == null) {
+                    n = ((Node) a[i + 1]).collect(keys, fields, n);
+                } else {
+                    keys[n] = (String) a[i];
+                    fields[n] = (Field) a[i + 1];
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+        int bitmap;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            super(edit, array);
+            this.bitmap = bitmap;
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        int pairs() {
+            return Integer.bitCount(bitmap);
+        }
+
+        @Override
+        Object find(int shift, int hash, String key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = 2 * index(bit);
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).find(shift + 5, hash, key);
+            }
+            return key.equals(k) ? array[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, String key, JsValue value, int seq, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = 2 * index(bit);
+            if ((bitmap & bit) != 0) {
+                Object k = array[i];
+                Object v = array[i + 1];
+                if (k == null) {
+                    Node sub = (Node) v;
+                    Node newSub = sub.put(edit, shift + 5, hash, key, value, seq, added);
+                    return newSub == sub ? this : set(edit, i + 1, newSub);
+                }
+                if (key.equals(k)) {
+                    Field field = (Field) v;
+                    return field.value == value ? this : set(edit, i + 1, new Field(value, field.seq));
+                }
+                added[0] = true;
+                Node sub = split(edit, shift + 5, (String) k, (Field) v, hash, key, new Field(value, seq));
+                BitmapNode node = editable(edit) ? this : new BitmapNode(edit, bitmap, array.clone());
+                node.array[i] = null;
+                node.array[i + 1] = sub;
+                return node;
+            }
+            added[0] = true;
+            int n = pairs();
+            if (editable(edit) && array.length > 2 * n) {
+                System.arraycopy(array, i, array, i + 2, 2 * n - i);
+                array[i] = key;
+                array[i + 1] = new Field(value, seq);
+                bitmap |= bit;
+                return this;
+            }
+            // nodes of a bulk update get some room to grow in place
+            Object[] newArray = new Object[2 * (edit == null ? n + 1 : Math.min(n + 4, 32))];
+            System.arraycopy(array, 0, newArray, 0, i);
+            newArray[i] = key;
+            newArray[i + 1] = new Field(value, seq);
+            System.arraycopy(array, i, newArray, i + 2, 2 * n - i);
+            if (editable(edit)) {
+                array = newArray;
+                bitmap |= bit;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap | bit, newArray);
+        }
+
+        private Node set(Object edit, int i, Object value) {
+            if (editable(edit)) {
+                array[i] = value;
+                return this;
+            }
+            Object[] newArray = array.clone();
+            newArray[i] = value;
+            return new BitmapNode(edit, bitmap, newArray);
+        }
+
+        @Override
+        Node remove(int shift, int hash, String key, boolean[] removed) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * index(bit);
+            Object k = array[i];
+            if (k == null) {
+                Node sub = (Node) array[i + 1];
+                Node newSub = sub.remove(shift + 5, hash, key, removed);
+                if (newSub == sub) {
+                    return this;
+                }
+                if (newSub != null) {
+                    Object[] newArray = array.clone();
+                    newArray[i + 1] = newSub;
+                    return new BitmapNode(null, bitmap, newArray);
+                }
+            } else if (key.equals(k)) {
+                removed[0] = true;
+            } else {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            int n = pairs();
+            Object[] newArray = new Object[2 * (n - 1)];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, 2 * n - i - 2);
+            return new BitmapNode(null, bitmap ^ bit, newArray);
+        }
+
+        // node holding two keys that used the same slot of the parent
+        private static Node split(Object edit, int shift, String key1, Field field1, int hash2, String key2, Field field2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(edit, hash1, 2, new Object[]{key1, field1, key2, field2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(edit, shift, hash1, key1, field1.value, field1.seq, added)
+                    .put(edit, shift, hash2, key2, field2.value, field2.seq, added);
+        }
+    }
+
+    // keys with the same hash, at the bottom of the trie
+    private static final class CollisionNode extends Node {
+
+        final int hash;
+        int count;
+
+        CollisionNode(Object edit, int hash, int count, Object[] array) {
+            super(edit, array);
+            this.hash = hash;
+            this.count = count;
+        }
+
+        private int indexOf(String key) {
+            for (int i = 0; i < 2 * count; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int pairs() {
+            return count;
+        }
+
+        @Override
+        Object find(int shift, int hash, String key) {
+            if (hash != this.hash) {
+                return NOT_FOUND;
+            }
+            int i = indexOf(key);
+            return i < 0 ? NOT_FOUND : array[i + 1];
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, String key, JsValue value, int seq, boolean[] added) {
+            if (hash != this.hash) {
+                Node parent = new BitmapNode(edit, BitmapNode.bit(this.hash, shift), new Object[]{null, this});
+                return parent.put(edit, shift, hash, key, value, seq, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                Field field = (Field) array[i + 1];
+                if (field.value == value) {
+                    return this;
+                }
+                if (editable(edit)) {
+                    array[i + 1] = new Field(value, field.seq);
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[i + 1] = new Field(value, field.seq);
+                return new CollisionNode(edit, hash, count, newArray);
+            }
+            added[0] = true;
+            Object[] newArray = new Object[2 * (count + 1)];
+            System.arraycopy(array, 0, newArray, 0, 2 * count);
+            newArray[2 * count] = key;
+            newArray[2 * count + 1] = new Field(value, seq);
+            if (editable(edit)) {
+                array = newArray;
+                count++;
+                return this;
+            }
+            return new CollisionNode(edit, hash, count + 1, newArray);
+        }
+
+        @Override
+        Node remove(int shift, int hash, String key, boolean[] removed) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            removed[0] = true;
+            if (count == 1) {
+                return null;
+            }
+            Object[] newArray = new Object[2 * (count - 1)];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, 2 * count - i - 2);
+            return new CollisionNode(null, hash, count - 1, newArray);
+        }
+    }
+
+    private static final class EntryIterator implements Iterator<Entry<String, JsValue>> {
+
+        private final Order order;
+        private int position = 0;
+
+        private EntryIterator(Order order) {
+            this.order = order;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < order.keys.length;
+        }
+
+        @Override
+        public Entry<String, JsValue> next() {
+            if (position == order.keys.length) {
+                throw new NoSuchElementException();
+            }
+            int i = position++;
+            return new SimpleImmutableEntry<>(order.keys[i], order.values[i]);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.reactivecouchbase.json.exceptions;
+
+public class JsParseException extends JsException {
+    private final long line;
+    private final long column;
+    private final long offset;
+
+    public JsParseException(String s, Throwable throwable, long line, long column, long offset) {
+        super(s, throwable);
+        this.line = line;
+        this.column = column;
+        this.offset = offset;
+    }
+
+    // 1-based line of the input where the error happened, -1 if unknown
+    public long getLine() {
+        return line;
+    }
+
+    // 1-based column in that line, -1 if unknown
+    public long getColumn() {
+        return column;
+    }
+
+    // byte offset from the beginning of the input, -1 if unknown
+    public long getOffset() {
+        return offset;
+    }
+}
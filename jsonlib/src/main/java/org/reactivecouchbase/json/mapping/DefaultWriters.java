@@ -5,6 +5,7 @@ import org.reactivecouchbase.json.JsObject;
 import org.reactivecouchbase.json.JsValue;
 import org.reactivecouchbase.json.Json;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class DefaultWriters {
@@ -18,11 +19,11 @@ public class DefaultWriters {
 
     public static <T> Writer<List<T>> seq(final Writer<T> writer) {
         return value -> {
-            JsArray array = Json.arr();
+            List<JsValue> values = new ArrayList<>(value.size());
             for (T val : value) {
-                array = array.addElement(writer.write(val));
+                values.add(writer.write(val));
             }
-            return array;
+            return new JsArray(values);
         };
     }
 
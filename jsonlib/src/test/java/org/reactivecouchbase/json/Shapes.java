@@ -0,0 +1,17 @@
+package org.reactivecouchbase.json;
+
+// Access to the package private shapes of the objects, for the tests
+public final class Shapes {
+
+    public static final int MAX_TRANSITIONS = Shape.MAX_TRANSITIONS;
+    public static final int MAX_ROOT_TRANSITIONS = Shape.MAX_ROOT_TRANSITIONS;
+    public static final int MAX_SHAPES = Shape.MAX_SHAPES;
+
+    private Shapes() {
+    }
+
+    // the shape of the fields of the object, null if they are not stored in an ArrayFieldMap
+    public static Object of(JsObject object) {
+        return object.values instanceof ArrayFieldMap ? ((ArrayFieldMap) object.values).shape() : null;
+    }
+}
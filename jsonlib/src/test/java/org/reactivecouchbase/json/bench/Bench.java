@@ -0,0 +1,82 @@
+package org.reactivecouchbase.json.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+// Minimal measurement helpers for the benchmark mains of this package : they are run by hand (not by the test
+// suite), e.g. java -cp <test and runtime classpath> org.reactivecouchbase.json.bench.JsonBench
+// Timings are the best average of several rounds after a warmup, footprints the heap retained per instance.
+final class Bench {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    // written by the measured code so that the JIT can't drop it
+    static volatile Object sink;
+
+    private Bench() {
+    }
+
+    // best average time of one call of the operation, in nanoseconds
+    static double nanosPerOp(int iterations, Runnable operation) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(iterations, operation);
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, run(iterations, operation));
+        }
+        return best;
+    }
+
+    private static double run(int iterations, Runnable operation) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    // bytes allocated by one call of the operation, -1 when the JVM doesn't count them (HotSpot does)
+    static long bytesPerOp(int iterations, Runnable operation) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return -1L;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        run(iterations, operation);
+        long before = threads.getThreadAllocatedBytes(thread);
+        run(iterations, operation);
+        return (threads.getThreadAllocatedBytes(thread) - before) / iterations;
+    }
+
+    // heap retained by each of the count instances created by the factory, in bytes
+    static long bytesPerInstance(int count, Supplier<Object> factory) {
+        Object[] keep = new Object[count];
+        long before = usedHeap();
+        for (int i = 0; i < count; i++) {
+            keep[i] = factory.get();
+        }
+        long after = usedHeap();
+        sink = keep;
+        return (after - before) / count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static void report(String name, double nanos) {
+        System.out.printf("%-48s %12.1f ns/op%n", name, nanos);
+    }
+
+    static void report(String name, int iterations, Runnable operation) {
+        double nanos = nanosPerOp(iterations, operation);
+        long bytes = bytesPerOp(iterations, operation);
+        System.out.printf("%-48s %12.1f ns/op %14d B/op%n", name, nanos, bytes);
+    }
+}
@@ -0,0 +1,64 @@
+package org.reactivecouchbase.json.bench;
+
+import org.reactivecouchbase.json.JsNumber;
+import org.reactivecouchbase.json.JsObject;
+import org.reactivecouchbase.json.JsValue;
+import org.reactivecouchbase.json.Json;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Footprint and lookup time of the fields of objects from 1 to 64 fields, against a HashMap holding the
+// same fields. Objects up to 32 fields are ArrayFieldMaps sharing their shape, bigger ones LinkedHashMaps.
+// From 2 fields on, lookups in the compact maps (a scan or a probe of the shape) are slower than HashMap ones,
+// about 15-25 ns against 9-18 ns on one desktop JVM run, for a map 2 to 8 times smaller : that's the tradeoff.
+public final class FieldMapBench {
+
+    private static final int INSTANCES = 20000;
+    private static final int LOOKUPS = 1000000;
+
+    public static void main(String[] args) {
+        System.out.printf("%-8s %14s %14s %14s %14s%n", "fields", "object bytes", "hashmap bytes", "object ns/get", "hashmap ns/get");
+        for (int size = 1; size <= 64; size = size < 8 ? size + 1 : size * 2) {
+            String json = json(size);
+            Map<String, JsValue> values = Json.parse(json).as(JsObject.class).values;
+            Map<String, JsValue> hashMap = new HashMap<>(values);
+            // both hold the same key and value instances, only the maps are measured
+            long objectBytes = Bench.bytesPerInstance(INSTANCES, () -> {
+                JsObject.Builder builder = JsObject.builder(values.size());
+                for (Map.Entry<String, JsValue> field : values.entrySet()) {
+                    builder.put(field.getKey(), field.getValue());
+                }
+                return builder.build().values;
+            });
+            long hashMapBytes = Bench.bytesPerInstance(INSTANCES, () -> new HashMap<>(values));
+            String[] keys = values.keySet().toArray(new String[size]);
+            double objectGet = lookups(values, keys);
+            double hashMapGet = lookups(hashMap, keys);
+            System.out.printf("%-8d %14d %14d %14.1f %14.1f%n", size, objectBytes, hashMapBytes, objectGet, hashMapGet);
+        }
+    }
+
+    private static String json(int size) {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            json.append(i == 0 ? "" : ",").append("\"field").append(i).append("\":").append(i);
+        }
+        return json.append("}").toString();
+    }
+
+    // keys copied so that lookups compare the strings instead of their references
+    private static double lookups(Map<String, JsValue> map, String[] keys) {
+        String[] copies = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            copies[i] = new String(keys[i]);
+        }
+        int[] next = new int[1];
+        return Bench.nanosPerOp(LOOKUPS, () -> {
+            JsValue value = map.get(copies[next[0]++ % copies.length]);
+            if (value == null || ((JsNumber) value).value.signum() < 0) {
+                Bench.sink = value;
+            }
+        });
+    }
+}
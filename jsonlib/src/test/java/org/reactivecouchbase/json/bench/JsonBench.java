@@ -0,0 +1,214 @@
+package org.reactivecouchbase.json.bench;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivecouchbase.json.JsArray;
+import org.reactivecouchbase.json.JsBoolean;
+import org.reactivecouchbase.json.JsNumber;
+import org.reactivecouchbase.json.JsObject;
+import org.reactivecouchbase.json.JsProjection;
+import org.reactivecouchbase.json.JsString;
+import org.reactivecouchbase.json.JsValue;
+import org.reactivecouchbase.json.Jackson;
+import org.reactivecouchbase.json.Json;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.reactivecouchbase.json.Syntax.$;
+import static org.reactivecouchbase.json.Syntax.nill;
+
+// Time and allocation of the main paths of the library on generated documents of about 1 KB, 100 KB and 10 MB,
+// with plain Jackson on the same text as a reference where there is one :
+// - parsing, per element of the top level array : flat when building the tree is linear in its size, against
+//   the former tree building that copied the fields or elements for every one added, which grows with the size
+// - projected parsing of a single path against a full parse followed by querySelector
+// - compact output through toJsonString (stringify) and the Jackson serializer (generateFromJsValue)
+// - pretty printing, the allocation per call being mostly the output itself once the buffers are reused
+// - canonical output against stringify
+// - edits and reads of a 300 fields object
+// - parseArrayParallel on pools of 1 to 16 workers against a sequential Json.parse of the same array of about 20 MB
+// Run it with a large enough heap, e.g. java -Xmx2g -cp <test and runtime classpath> ...bench.JsonBench
+public final class JsonBench {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws IOException {
+        parsing();
+        for (int rows : new int[] { 6, 640, 64000 }) {
+            String json = document(rows);
+            int iterations = Math.max(5, 20000000 / json.length());
+            String name = " (" + json.length() + " chars)";
+            JsValue value = Json.parse(json);
+            JsonNode node = MAPPER.readTree(json);
+            Bench.report("Json.parse" + name, iterations, () -> Bench.sink = Json.parse(json));
+            Bench.report("ObjectMapper.readTree" + name, iterations, () -> Bench.sink = readTree(json));
+            JsProjection projection = JsProjection.compile("meta.id");
+            Bench.report("JsProjection.parse(meta.id)" + name, iterations, () -> Bench.sink = projection.parse(json));
+            Bench.report("Json.parse + querySelector(meta.id)" + name, iterations, () -> Bench.sink = Json.parse(json).querySelector("meta.id"));
+            Bench.report("Json.stringify" + name, iterations, () -> Bench.sink = Json.stringify(value));
+            Bench.report("Jackson.generateFromJsValue" + name, iterations, () -> Bench.sink = Jackson.generateFromJsValue(value));
+            Bench.report("ObjectMapper.writeValueAsString" + name, iterations, () -> Bench.sink = writeValueAsString(node));
+            Bench.report("Json.prettyPrint" + name, iterations, () -> Bench.sink = Json.prettyPrint(value));
+            Bench.report("Json.canonicalize" + name, iterations, () -> Bench.sink = Json.canonicalize(value));
+            System.out.println();
+        }
+        edits();
+        parallelParsing();
+    }
+
+    // the time per element of Json.parse only drifts with the cache and GC costs of a bigger tree, with the
+    // former add per element it grows linearly with the size of the array (not run on the biggest one)
+    private static void parsing() {
+        for (int elements : new int[] { 1000, 5000, 20000, 80000 }) {
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < elements; i++) {
+                json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"row ").append(i).append("\"}");
+            }
+            byte[] bytes = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+            double nanos = Bench.nanosPerOp(Math.max(5, 400000 / elements), () -> Bench.sink = Json.parse(bytes));
+            Bench.report("Json.parse per element, " + elements + " elements", nanos / elements);
+            if (elements <= 20000) {
+                double baseline = Bench.nanosPerOp(Math.max(1, 20000 / elements), () -> Bench.sink = parseAddingPerElement(bytes));
+                Bench.report("add per element, " + elements + " elements", baseline / elements);
+            }
+        }
+        System.out.println();
+    }
+
+    // the tree building of the first versions of the library : JsObject.add and JsArray.addElement copied the
+    // fields or elements already read into a new HashMap or ArrayList for every field or element
+    private static JsValue parseAddingPerElement(byte[] bytes) {
+        try (JsonParser jp = MAPPER.getFactory().createParser(bytes)) {
+            jp.nextToken();
+            return readAddingPerElement(jp);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JsValue readAddingPerElement(JsonParser jp) throws IOException {
+        JsonToken token = jp.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            Map<String, JsValue> values = new HashMap<>();
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String key = jp.getCurrentName();
+                jp.nextToken();
+                Map<String, JsValue> newValues = new HashMap<>();
+                newValues.putAll(values);
+                newValues.put(key, readAddingPerElement(jp));
+                values = newValues;
+            }
+            return new JsObject(values);
+        }
+        if (token == JsonToken.START_ARRAY) {
+            List<JsValue> values = new ArrayList<>();
+            while (jp.nextToken() != JsonToken.END_ARRAY) {
+                List<JsValue> newValues = new ArrayList<>();
+                newValues.addAll(values);
+                newValues.add(readAddingPerElement(jp));
+                values = newValues;
+            }
+            return new JsArray(values);
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return new JsNumber(jp.getDecimalValue());
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return new JsString(jp.getText());
+        }
+        if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
+            return new JsBoolean(token == JsonToken.VALUE_TRUE);
+        }
+        return nill();
+    }
+
+    private static void edits() {
+        String[] keys = new String[300];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "field" + i;
+        }
+        Bench.report("300 x JsObject.with, from an empty object", 2000, () -> {
+            JsObject object = Json.obj();
+            for (String key : keys) {
+                object = object.with(key, 1);
+            }
+            Bench.sink = object;
+        });
+        JsObject.Builder builder = JsObject.builder(keys.length);
+        for (String key : keys) {
+            builder.put(key, 1);
+        }
+        JsObject object = builder.build();
+        // the first edit copies the fields of a built or parsed object into a trie, the next ones share it
+        int[] next = new int[1];
+        Bench.report("first JsObject.with on 300 built fields", 20000, () -> Bench.sink = object.with(keys[next[0]++ % keys.length], 2));
+        JsObject edited = object.with("extra", 1);
+        Bench.report("JsObject.with on 300 edited fields", 1000000, () -> Bench.sink = edited.with(keys[next[0]++ % keys.length], 2));
+        Bench.report("JsObject.remove on 300 edited fields", 1000000, () -> Bench.sink = edited.remove(keys[next[0]++ % keys.length]));
+        Bench.report("JsObject.field on 300 built fields", 1000000, () -> Bench.sink = object.field(keys[next[0]++ % keys.length]));
+        Bench.report("JsObject.field on 300 edited fields", 1000000, () -> Bench.sink = edited.field(keys[next[0]++ % keys.length]));
+    }
+
+    // the speedup is bounded by the sequential scan of the element boundaries and by the available processors
+    private static void parallelParsing() {
+        byte[] bytes = Json.stringify(rows(128000)).getBytes(StandardCharsets.UTF_8);
+        String name = " (" + bytes.length + " bytes, " + Runtime.getRuntime().availableProcessors() + " processors)";
+        double sequential = Bench.nanosPerOp(3, () -> Bench.sink = Json.parse(bytes));
+        Bench.report("Json.parse" + name, sequential);
+        for (int workers : new int[] { 1, 2, 4, 8, 16 }) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try {
+                double nanos = Bench.nanosPerOp(3, () -> Bench.sink = Json.parseArrayParallel(bytes, pool));
+                System.out.printf("%-48s %12.1f ns/op %13.2fx%n", "Json.parseArrayParallel, " + workers + " workers", nanos, sequential / nanos);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        System.out.println();
+    }
+
+    // a meta object followed by an array of rows like the ones of a view result
+    private static String document(int rows) {
+        return Json.stringify(Json.obj($("meta", Json.obj($("id", "doc"), $("rev", 1))), $("rows", rows(rows))));
+    }
+
+    private static JsArray rows(int rows) {
+        JsArray.Builder values = JsArray.builder(rows);
+        for (int i = 0; i < rows; i++) {
+            values.add(Json.obj(
+                    $("id", "row::" + i),
+                    $("name", "Name \"" + i + "\" \u00e9t\u00e9"),
+                    $("score", i * 1.25),
+                    $("active", i % 2 == 0),
+                    $("tags", Json.arr("a", "b", i)),
+                    $("address", Json.obj($("number", i), $("street", "Baker Street"), $("city", "London")))
+            ));
+        }
+        return values.build();
+    }
+
+    private static JsonNode readTree(String json) {
+        try {
+            return MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String writeValueAsString(JsonNode node) {
+        try {
+            return MAPPER.writeValueAsString(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
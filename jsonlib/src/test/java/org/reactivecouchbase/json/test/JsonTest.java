@@ -7,6 +7,9 @@ import org.reactivecouchbase.json.mapping.*;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.reactivecouchbase.json.Syntax.*;
 import static org.reactivecouchbase.json.mapping.ReaderConstraints.*;
@@ -533,6 +536,10 @@ public class JsonTest {
         Assert.assertEquals(expected, obj);
         Assert.assertNotEquals(expected, wrongobj1);
         Assert.assertNotEquals(expected, wrongobj2);
+        JsArray array = Json.arr(1, "a", expected);
+        Assert.assertTrue(array.deepEquals(Json.arr(1, "a", obj)));
+        Assert.assertTrue(array.deepEquals(Json.arr(1).append(Json.arr("a", obj))));
+        Assert.assertFalse(array.deepEquals(Json.arr(1, "a", wrongobj1)));
     }
 
     @Test
@@ -587,6 +594,668 @@ public class JsonTest {
         Assert.assertEquals("OK", fold);
     }
 
+    @Test
+    public void parseLargeArrayTest() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) {
+                builder.append(",");
+            }
+            builder.append("{\"id\":").append(i).append(",\"name\":\"doc-").append(i).append("\",\"id\":").append(i + 1).append("}");
+        }
+        builder.append("]");
+        JsArray array = Json.parse(builder.toString()).asArray();
+        Assert.assertEquals(5000, array.size());
+        Assert.assertEquals(Integer.valueOf(4243), array.get(4242).field("id").asInteger());
+        Assert.assertEquals("doc-4242", array.get(4242).field("name").asString());
+        Assert.assertEquals(2, array.get(4242).asObject().size());
+    }
+
+    @Test
+    public void parseBytesTest() throws Exception {
+        byte[] bytes = "  {\"name\":\"J\u00f6hn\",\"age\":42}".getBytes("UTF-8");
+        JsObject expected = Json.obj($("name", "J\u00f6hn"), $("age", 42));
+        Assert.assertEquals(expected, Json.parse(bytes));
+        Assert.assertEquals(expected, Json.parse(bytes, 2, bytes.length - 2));
+        Assert.assertEquals(expected, Json.parse(new java.io.ByteArrayInputStream(bytes)));
+        java.nio.ByteBuffer heap = java.nio.ByteBuffer.wrap(bytes);
+        heap.position(2);
+        Assert.assertEquals(expected, Json.parse(heap));
+        Assert.assertEquals(2, heap.position());
+        java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        Assert.assertEquals(expected, Json.parse(direct));
+        Assert.assertEquals(0, direct.position());
+    }
+
+    @Test
+    public void parseLinesTest() throws Exception {
+        String lines = "{\"id\":1}\n\n{\"id\":2}\r\n{\"id\":\n[3]";
+        java.util.List<org.reactivecouchbase.json.exceptions.JsParseException> errors = new java.util.ArrayList<>();
+        java.util.List<JsValue> values = Json.parseLines(new java.io.ByteArrayInputStream(lines.getBytes("UTF-8")), errors::add)
+                .collect(java.util.stream.Collectors.toList());
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals(Json.obj($("id", 2)), values.get(1));
+        Assert.assertEquals(Json.arr(3), values.get(2));
+        Assert.assertEquals(1, errors.size());
+        Assert.assertEquals(4L, errors.get(0).getLine());
+
+        String concatenated = "{\"id\":1} {\"id\":2}[3]\"four\" 5";
+        java.util.List<JsValue> roots = Json.parseValues(new java.io.ByteArrayInputStream(concatenated.getBytes("UTF-8")))
+                .collect(java.util.stream.Collectors.toList());
+        Assert.assertEquals(5, roots.size());
+        Assert.assertEquals(Json.obj($("id", 2)), roots.get(1));
+        Assert.assertEquals(string("four"), roots.get(3));
+        Assert.assertEquals(number(5), roots.get(4));
+    }
+
+    @Test
+    public void lazyParseTest() {
+        String doc = "{\"meta\":{\"id\":\"doc-1\",\"rev\":2},\"tags\":[\"a\",{\"b\":true}],\"count\":12,\"meta\":{\"id\":\"doc-2\"}}";
+        JsValue lazy = Json.parseLazy(doc);
+        JsValue eager = Json.parse(doc);
+        Assert.assertEquals("doc-2", lazy.querySelector("meta.id").asString());
+        Assert.assertEquals(Boolean.TRUE, lazy.querySelector("tags[1].b").asBoolean());
+        Assert.assertEquals(Integer.valueOf(12), lazy.field("count").asInteger());
+        Assert.assertEquals(eager, lazy);
+        Assert.assertEquals(lazy, eager);
+        Assert.assertEquals(eager.hashCode(), lazy.hashCode());
+        Assert.assertEquals("{\"b\":true}", Json.stringify(lazy.field("tags").get(1)));
+        Assert.assertEquals(eager, Json.parse(Json.stringify(lazy)));
+        Assert.assertEquals(Json.parse(Json.prettyPrint(lazy)), eager);
+    }
+
+    @Test
+    public void lazyStringifyTest() throws Exception {
+        String compact = "{\"id\":\"doc-1\",\"items\":[{\"a\":1},{\"b\":\"x y\"}],\"meta\":{\"rev\":2}}";
+        JsValue eager = Json.parse(compact);
+        Assert.assertEquals(compact, Json.stringify(Json.parseLazy(compact)));
+        JsValue pretty = Json.parseLazy(Json.prettyPrint(eager));
+        Assert.assertEquals(compact, Json.stringify(pretty));
+        Assert.assertEquals("{\"rev\":2}", Json.stringify(pretty.field("meta")));
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        Json.writeTo(pretty, out);
+        Assert.assertEquals(compact, out.toString("UTF-8"));
+        out.reset();
+        Json.writeTo(Json.parseLazy(compact), out);
+        Assert.assertEquals(compact, out.toString("UTF-8"));
+        String duplicated = "{\"id\":1,\"id\":2}";
+        Assert.assertEquals("{\"id\":2}", Json.stringify(Json.parseLazy(duplicated)));
+        Assert.assertEquals("{\"meta\":{\"id\":2}}", Json.stringify(Json.parseLazy("{\"meta\":" + duplicated + "}")));
+        // numbers and escapes in other forms than the ones of the writers are normalized like after Json.parse
+        for (String json : new String[] { "{\"a\":{\"n\":1.0e2,\"c\":\"\\u00e9\"}}", "{\"a\":1.50}", "{\"a\":\"\\/\"}", "{\"a\":-0}" }) {
+            Assert.assertEquals(Json.stringify(Json.parse(json)), Json.stringify(Json.parseLazy(json)));
+            Assert.assertEquals(Jackson.generateFromJsValue(Json.parse(json)), Jackson.generateFromJsValue(Json.parseLazy(json)));
+        }
+        String escaped = "{\"a\":\"\\\"\\n\\u001F\",\"b\":-12}";
+        Assert.assertEquals(escaped, Json.stringify(Json.parseLazy(escaped)));
+        // same errors and trailing content handling as Json.parse
+        Assert.assertEquals(Json.parse("{} x"), Json.parseLazy("{} x"));
+        try {
+            Json.parseLazy("  ");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals(com.fasterxml.jackson.databind.exc.MismatchedInputException.class, e.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void pushParserTest() throws Exception {
+        byte[] bytes = "[{\"id\":1,\"tags\":[\"a\",\"b\"]}, {\"id\":2}, 3 ,\"four\"]".getBytes("UTF-8");
+        java.util.List<JsValue> elements = new java.util.ArrayList<>();
+        JsPushParser parser = JsPushParser.arrayElements(elements::add);
+        for (int i = 0; i < bytes.length; i += 5) {
+            parser.feed(java.nio.ByteBuffer.wrap(bytes, i, Math.min(5, bytes.length - i)));
+            if (i == 25) {
+                Assert.assertEquals(1, elements.size());
+            }
+        }
+        parser.end();
+        Assert.assertEquals(Json.parse(new String(bytes, "UTF-8")).asArray().values, elements);
+
+        java.util.List<JsValue> roots = new java.util.ArrayList<>();
+        JsPushParser.values(roots::add).feed("{\"a\":1} [t".getBytes("UTF-8")).feed("rue] 42 ".getBytes("UTF-8")).end();
+        Assert.assertEquals(3, roots.size());
+        Assert.assertEquals(Json.arr(true), roots.get(1));
+
+        try {
+            JsPushParser.arrayElements(elements::add).feed("[1,2]\n [3]".getBytes("UTF-8")).end();
+            Assert.fail("a second root array must be rejected");
+        } catch (org.reactivecouchbase.json.exceptions.JsParseException e) {
+            Assert.assertEquals(2L, e.getLine());
+            Assert.assertEquals(2L, e.getColumn());
+        }
+    }
+
+    @Test
+    public void projectionTest() {
+        String doc = "{\"meta\":{\"id\":\"doc-1\",\"rev\":2,\"flags\":[1,2]},\"rows\":[{\"v\":0},{\"v\":1},{\"v\":2,\"w\":3},{\"v\":3}],\"other\":{\"id\":\"no\"}}";
+        JsValue projected = Json.parse(doc, "meta.id", "rows[2].v", "missing.field", "meta.flags");
+        Assert.assertEquals(Json.obj(
+                $("meta", Json.obj($("id", "doc-1"), $("flags", Json.arr(1, 2)))),
+                $("rows", Json.arr(nill(), nill(), Json.obj($("v", 2))))
+        ), projected);
+        JsValue full = Json.parse(doc);
+        for (String query : new String[]{"meta.id", "rows[2].v", "meta.flags"}) {
+            Assert.assertEquals(full.querySelector(query), projected.querySelector(query));
+        }
+        Assert.assertEquals(Json.arr(nill(), Json.obj($("a", 1))), JsProjection.compile("[1].a").parse("[{\"a\":0},{\"a\":1,\"b\":2},{\"a\":2}]"));
+        // selectors with several indexes are read like querySelector does
+        String nested = "{\"a\":[[0],[3,4,5],[6]]}";
+        Assert.assertEquals(Json.parse(nested).querySelector("a[1][2]"), Json.parse(nested, "a[1][2]").querySelector("a[1][2]"));
+        Assert.assertEquals(Json.arr(3, 4, 5), Json.parse(nested, "a[1][2]").querySelector("a[1][2]"));
+        for (String empty : new String[]{"", "  "}) {
+            try {
+                Json.parse(empty, "a");
+                Assert.fail();
+            } catch (RuntimeException e) {
+                Assert.assertEquals(com.fasterxml.jackson.databind.exc.MismatchedInputException.class, e.getCause().getClass());
+            }
+        }
+        try {
+            Json.parse(new byte[0], "a");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals(com.fasterxml.jackson.databind.exc.MismatchedInputException.class, e.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void parallelArrayTest() throws Exception {
+        StringBuilder builder = new StringBuilder(" [ ");
+        for (int i = 0; i < 20000; i++) {
+            if (i > 0) {
+                builder.append(" ,\n");
+            }
+            builder.append("{\"id\":").append(i).append(",\"text\":\"a \\\"quoted\\\" ]},[ text\",\"list\":[").append(i).append(",{}]}");
+        }
+        builder.append(" ]\n");
+        String json = builder.toString();
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            JsArray parallel = Json.parseArrayParallel(json.getBytes("UTF-8"), pool);
+            Assert.assertEquals(Json.parse(json), parallel);
+            Assert.assertEquals(Json.arr(), Json.parseArrayParallel("[]".getBytes("UTF-8"), pool));
+            byte[] invalid = "[1, {\"a\": tru}]".getBytes("UTF-8");
+            try {
+                Json.parseArrayParallel(invalid, pool);
+                Assert.fail();
+            } catch (org.reactivecouchbase.json.exceptions.JsParseException e) {
+                Assert.assertTrue(e.getCause() instanceof com.fasterxml.jackson.core.JsonProcessingException);
+                Assert.assertTrue(e.getOffset() >= 4L && e.getOffset() < invalid.length);
+            }
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("jsonlib", ".json");
+            try {
+                java.nio.file.Files.write(file, json.getBytes("UTF-8"));
+                Assert.assertEquals(parallel, Json.parseArrayParallel(file, pool));
+            } finally {
+                java.nio.file.Files.delete(file);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void mappedFileTest() throws Exception {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("jsonlib", ".json");
+        try {
+            java.nio.file.Files.write(file, "[{\"id\":1},{\"id\":2},[3]]".getBytes("UTF-8"));
+            Assert.assertEquals(Json.arr(Json.obj($("id", 1)), Json.obj($("id", 2)), Json.arr(3)), Json.parse(file));
+            try (java.util.stream.Stream<JsValue> elements = Json.parseArrayElements(file)) {
+                Assert.assertEquals(Json.parse(file).asArray().values, elements.collect(java.util.stream.Collectors.toList()));
+            }
+            try (java.util.stream.Stream<JsValue> elements = Json.parseArrayElements(new java.io.ByteArrayInputStream("\n  {\"id\":1}".getBytes("UTF-8")))) {
+                elements.count();
+                Assert.fail("only top level arrays have elements");
+            } catch (org.reactivecouchbase.json.exceptions.JsParseException e) {
+                Assert.assertEquals(2L, e.getLine());
+                Assert.assertEquals(3L, e.getColumn());
+                Assert.assertEquals(3L, e.getOffset());
+            }
+        } finally {
+            java.nio.file.Files.delete(file);
+        }
+    }
+
+    @Test
+    public void fieldNamesTest() {
+        long misses = FieldNames.misses();
+        JsObject first = Json.parse("{\"canonicalFieldName\":1}").as(JsObject.class);
+        JsObject second = Json.parse("{\"canonicalFieldName\":2}".getBytes()).as(JsObject.class);
+        Assert.assertSame(first.values.keySet().iterator().next(), second.values.keySet().iterator().next());
+        Assert.assertTrue(FieldNames.misses() > misses);
+        Assert.assertTrue(FieldNames.hits() > 0);
+        Assert.assertTrue(FieldNames.size() <= FieldNames.maxSize());
+    }
+
+    @Test
+    public void compactNumbersTest() {
+        JsArray numbers = Json.parse("[42,42.0,9223372036854775807,92233720368547758070,-7,1.5e3]").as(JsArray.class);
+        Assert.assertEquals(new JsNumber(42), numbers.get(0));
+        Assert.assertEquals(new JsNumber(new BigDecimal("42")), numbers.get(0));
+        Assert.assertNotEquals(numbers.get(0), numbers.get(1));
+        Assert.assertEquals(0, numbers.get(0).as(JsNumber.class).compareTo(numbers.get(1).as(JsNumber.class)));
+        Assert.assertEquals(Long.MAX_VALUE, numbers.get(2).as(JsNumber.class).value.longValue());
+        Assert.assertEquals(new BigDecimal("92233720368547758070"), numbers.get(3).as(JsNumber.class).value);
+        Assert.assertEquals(new BigDecimal("92233720368547758070").longValue(), numbers.get(3).as(Long.class).longValue());
+        Assert.assertEquals(-7, numbers.get(4).as(Integer.class).intValue());
+        Assert.assertEquals(1500.0, numbers.get(5).as(Double.class), 0.0);
+        Assert.assertEquals(new BigDecimal("42").hashCode(), numbers.get(0).hashCode());
+        Assert.assertEquals("[42,42.0,9223372036854775807,92233720368547758070,-7,1500]", Json.stringify(numbers));
+    }
+
+    @Test
+    public void serializerTest() {
+        JsObject doc = Json.obj(
+                $("name", "John \"Doe\""),
+                $("age", 42),
+                $("ratio", new BigDecimal("1.500")),
+                $("big", new BigDecimal("1E+25")),
+                $("small", new BigDecimal("0.00000000001")),
+                $("flags", Json.arr(true, false, nill(), undefined())),
+                $("nested", Json.obj($("empty", Json.arr())))
+        );
+        JsValue parsed = Json.parse(Jackson.generateFromJsValue(doc));
+        Assert.assertEquals("John \"Doe\"", parsed.field("name").as(String.class));
+        Assert.assertEquals("[true,false,null,null]", Jackson.generateFromJsValue(doc.field("flags")));
+        Assert.assertEquals("{\"empty\":[]}", Jackson.generateFromJsValue(doc.field("nested")));
+        Assert.assertEquals("1.5", Jackson.generateFromJsValue(doc.field("ratio")));
+        Assert.assertEquals("1E+25", Jackson.generateFromJsValue(doc.field("big")));
+        Assert.assertEquals("1E-11", Jackson.generateFromJsValue(doc.field("small")));
+        Assert.assertEquals("42", Jackson.generateFromJsValue(doc.field("age")));
+    }
+
+    @Test
+    public void writeToTest() throws Exception {
+        JsObject doc = Json.obj($("name", "J\u00f6hn"), $("tags", Json.arr("a", "b")), $("age", 42));
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        Json.writeTo(doc, out);
+        Assert.assertEquals(Jackson.generateFromJsValue(doc), new String(out.toByteArray(), "UTF-8"));
+        out.reset();
+        Json.writeTo(doc, java.nio.channels.Channels.newChannel(out), true);
+        Assert.assertEquals(Json.prettyPrint(doc), new String(out.toByteArray(), "UTF-8"));
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(1024);
+        Json.writeTo(doc, buffer);
+        buffer.flip();
+        Assert.assertEquals(doc, Json.parse(buffer));
+        StringBuilder builder = new StringBuilder("[");
+        Json.writeTo(doc, builder);
+        Assert.assertEquals("[" + Jackson.generateFromJsValue(doc), builder.toString());
+    }
+
+    @Test
+    public void stringifyEscapingTest() {
+        JsObject doc = Json.obj($("quo\"te", "line\nbreak\ttab\u0001"), $("list", Json.arr(1, 2.5, true, nill())));
+        String json = Json.stringify(doc);
+        Assert.assertEquals(doc, Json.parse(json));
+        Assert.assertTrue(json.contains("\"quo\\\"te\":\"line\\nbreak\\ttab\\u0001\""));
+        Assert.assertTrue(json.contains("\"list\":[1,2.5,true,null]"));
+        Assert.assertEquals("JsObject(\"a\":\"b\\\\c\")", Json.obj($("a", "b\\c")).toString());
+    }
+
+    @Test
+    public void memoizeTest() {
+        JsObject doc = Json.obj($("name", "John"), $("tags", Json.arr("a", Json.obj($("b", 1.50)))), $("address", Json.obj($("city", "London"))));
+        JsObject memoized = doc.memoize();
+        Assert.assertEquals(doc, memoized);
+        Assert.assertEquals(doc.hashCode(), memoized.hashCode());
+        Assert.assertEquals(doc.hashCode(), memoized.hashCode());
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(Json.stringify(doc), Json.stringify(memoized));
+            Assert.assertEquals(Jackson.generateFromJsValue(doc), Jackson.generateFromJsValue(memoized));
+            Assert.assertEquals(Json.prettyPrint(doc), Json.prettyPrint(memoized));
+        }
+        JsObject changed = memoized.add($("age", 42));
+        Assert.assertEquals(Jackson.generateFromJsValue(doc.add($("age", 42))), Jackson.generateFromJsValue(changed));
+        Assert.assertEquals(doc.add($("age", 42)), Json.parse(Json.stringify(changed)));
+        JsObject small = doc.memoize(8);
+        Assert.assertEquals(Jackson.generateFromJsValue(doc), Jackson.generateFromJsValue(small));
+        Assert.assertEquals(Json.stringify(doc), Json.stringify(small));
+        // large nested documents, cached at several levels, written alone or inside other values
+        java.util.List<JsValue> rows = new java.util.ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            rows.add(Json.obj($("id", i), $("name", "row \"" + i + "\""), $("doc", doc)));
+        }
+        JsObject big = Json.obj($("rows", new JsArray(rows)), $("count", 200));
+        for (int budget : new int[] { 512, 4096, 64 * 1024 }) {
+            JsObject cached = big.memoize(budget);
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals(Json.stringify(big), Json.stringify(cached));
+                Assert.assertEquals(Jackson.generateFromJsValue(big), Jackson.generateFromJsValue(cached));
+                Assert.assertEquals(Jackson.generateFromJsValue(Json.arr(1, big)), Jackson.generateFromJsValue(Json.arr(1, cached)));
+                Assert.assertEquals(Json.stringify(Json.obj($("a", big))), Json.stringify(Json.obj($("a", cached))));
+            }
+        }
+    }
+
+    @Test
+    public void reusableBuffersTest() {
+        java.util.List<JsValue> rows = new java.util.ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            rows.add(Json.obj($("id", i), $("name", "row " + i)));
+        }
+        JsArray big = new JsArray(rows);
+        String first = Json.stringify(big);
+        Assert.assertTrue(first.length() > 256 * 1024);
+        Assert.assertEquals("{\"id\":1}", Json.stringify(Json.obj($("id", 1))));
+        Assert.assertEquals(first, Json.stringify(big));
+        Assert.assertEquals(big, Json.parse(Jackson.generateFromJsValue(big)));
+        Assert.assertEquals("[1,{\"a\":[2]}]", Jackson.generateFromJsValue(Json.arr(1, Json.obj($("a", Json.arr(2)).memoize()))));
+    }
+
+    @Test
+    public void canonicalizeTest() {
+        JsObject first = Json.parse("{\"b\":[1.50,100,1e2],\"a\":{\"z\":\"\\u0001\\\"\",\"\\ue000\":1,\"\\ud83d\\ude00\":2},\"c\":0.000001}").as(JsObject.class);
+        JsObject second = Json.obj($("c", new BigDecimal("1E-6")), $("a", Json.obj($("\ud83d\ude00", 2), $("\ue000", 1.0), $("z", "\u0001\""))), $("b", Json.arr(1.5, 100, 100)));
+        String canonical = Json.canonicalize(first);
+        Assert.assertEquals("{\"a\":{\"z\":\"\\u0001\\\"\",\"\ue000\":1,\"\ud83d\ude00\":2},\"b\":[1.5,100,100],\"c\":0.000001}", canonical);
+        Assert.assertEquals(canonical, Json.canonicalize(second));
+        Assert.assertEquals("[1e+21,1.5e-7,-12.5,0,123456789012345678901]", Json.canonicalize(Json.arr(new BigDecimal("1E+21"), new BigDecimal("0.00000015"), -12.50, new BigDecimal("0.000"), new BigDecimal("123456789012345678901"))));
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        Json.writeCanonical(first, out);
+        Assert.assertEquals(canonical, Json.canonicalize(Json.parse(out.toByteArray())));
+        // flushed to the stream several times
+        java.util.List<JsValue> rows = new java.util.ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rows.add(Json.obj($("name", "\ud83d\ude00 row " + i), $("id", i)));
+        }
+        JsArray big = new JsArray(rows);
+        out = new java.io.ByteArrayOutputStream();
+        Json.writeCanonical(big, out);
+        Assert.assertArrayEquals(Json.canonicalize(big).getBytes(java.nio.charset.StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void toJsonWithoutTreeTest() {
+        java.util.Map<String, Object> map = new java.util.LinkedHashMap<>();
+        map.put("name", "John");
+        map.put("ratio", new BigDecimal("1.50"));
+        map.put("bytes", new byte[]{1, 2, 3});
+        map.put("tags", java.util.Arrays.asList("a", null));
+        map.put("nested", Json.obj($("x", 1)));
+        JsValue value = Json.toJson(map);
+        Assert.assertEquals(Jackson.jsonNodeToJsValue(Jackson.toJson(map)), value);
+        Assert.assertEquals(new JsNumber(new BigDecimal("1.5")), value.field("ratio"));
+        Assert.assertEquals("AQID", value.field("bytes").as(String.class));
+        Assert.assertEquals(Json.arr("a", nill()), value.field("tags"));
+        Assert.assertEquals(Json.obj($("x", 1)), value.field("nested"));
+        Assert.assertEquals(new JsString("John"), Json.wrap("John"));
+    }
+
+    @Test
+    public void readsWithoutTreeTest() {
+        JsValue json = Json.obj($("name", "John"), $("surname", "Doe"), $("age", 42));
+        User user = Json.fromJson(json, Json.reads(User.class)).get();
+        Assert.assertEquals("John", user.name);
+        Assert.assertEquals("Doe", user.surname);
+        Assert.assertEquals(Integer.valueOf(42), user.age);
+        Assert.assertEquals(java.util.Arrays.asList(1, "a"), Json.fromJson(Json.arr(1, "a"), Json.reads(java.util.List.class)).get());
+        Assert.assertTrue(Json.fromJson(Json.obj($("age", "old")), Json.reads(User.class)).isErrors());
+    }
+
+    @Test
+    public void wrapFastPathTest() {
+        java.util.Map<String, Object> map = new java.util.LinkedHashMap<>();
+        map.put("name", "John");
+        map.put("age", 42);
+        map.put("scores", new int[]{1, 2});
+        map.put("tags", java.util.Arrays.asList("a", null));
+        map.put("nick", java.util.Optional.of("jd"));
+        map.put("none", java.util.Optional.empty());
+        map.put("born", java.time.LocalDate.of(1990, 1, 2));
+        map.put("nested", Json.obj($("ok", true)));
+        JsObject obj = Json.obj(map);
+        Assert.assertEquals("John", obj.field("name").as(String.class));
+        Assert.assertEquals(Integer.valueOf(42), obj.field("age").as(Integer.class));
+        Assert.assertEquals(Json.arr(1, 2), obj.field("scores"));
+        Assert.assertEquals(Json.arr("a", nill()), obj.field("tags"));
+        Assert.assertEquals("jd", obj.field("nick").as(String.class));
+        Assert.assertEquals(nill(), obj.field("none"));
+        Assert.assertEquals(java.time.LocalDate.of(1990, 1, 2), obj.field("born").as(java.time.LocalDate.class));
+        Assert.assertEquals(Boolean.TRUE, obj.field("nested").field("ok").as(Boolean.class));
+        Assert.assertEquals(Json.parse("1.5"), Json.wrap(new java.math.BigDecimal("1.50")));
+        Assert.assertEquals("AQI=", Json.wrap(new byte[]{1, 2}).as(String.class));
+        Assert.assertEquals("John", Json.wrap(new User("John", "Doe", 42)).field("name").as(String.class));
+    }
+
+    @Test
+    public void persistentFieldsTest() {
+        java.util.Map<String, JsValue> fields = new java.util.HashMap<>();
+        JsObject obj = Json.obj();
+        for (int i = 0; i < 500; i++) {
+            obj = obj.with("field" + i, i);
+            fields.put("field" + i, new JsNumber(i));
+        }
+        // "Aa" and "BB" have the same hash code
+        JsObject colliding = obj.with("Aa", "a").with("BB", "b");
+        JsObject removed = colliding.remove("Aa").remove("field42");
+        Assert.assertEquals(500, obj.size());
+        Assert.assertEquals(new JsObject(fields), obj);
+        Assert.assertEquals(new JsObject(fields).hashCode(), obj.hashCode());
+        Assert.assertEquals("a", colliding.field("Aa").as(String.class));
+        Assert.assertEquals("b", colliding.field("BB").as(String.class));
+        Assert.assertEquals(500, removed.size());
+        Assert.assertFalse(removed.exists("Aa"));
+        Assert.assertFalse(removed.exists("field42"));
+        Assert.assertEquals("b", removed.field("BB").as(String.class));
+        Assert.assertTrue(colliding.exists("field42"));
+        Assert.assertEquals(obj, Json.parse(Json.stringify(obj)));
+        Assert.assertEquals(Json.obj($("a", 1), $("b", 2)), Json.obj($("a", 1)).merge(Json.obj($("a", 3), $("b", 2))));
+        Assert.assertEquals(Json.obj($("a", 1)), Json.obj($("a", 1), $("b", 2)).remove("b").remove("c"));
+    }
+
+    @Test
+    public void persistentElementsTest() {
+        java.util.List<JsValue> expected = new java.util.ArrayList<>();
+        JsArray arr = Json.arr();
+        for (int i = 0; i < 1000; i++) {
+            arr = arr.addElement(new JsNumber(i));
+            expected.add(new JsNumber(i));
+        }
+        JsArray more = arr.preprendElement(new JsString("first")).append(Json.arr("a", "b")).preprend(Json.arr("z"));
+        Assert.assertEquals(1000, arr.size());
+        Assert.assertEquals(new JsArray(expected), arr);
+        Assert.assertEquals(new JsArray(expected).hashCode(), arr.hashCode());
+        Assert.assertEquals(1004, more.size());
+        Assert.assertEquals("z", more.get(0).as(String.class));
+        Assert.assertEquals("first", more.get(1).as(String.class));
+        Assert.assertEquals(Integer.valueOf(500), more.get(502).as(Integer.class));
+        Assert.assertEquals("b", more.get(1003).as(String.class));
+        Assert.assertEquals(Json.arr(10, 11, 12), arr.slice(10, 13));
+        Assert.assertEquals(Json.arr(998, 999), arr.slice(998, 2000));
+        Assert.assertTrue(arr.slice(5, 5).isEmpty());
+        Assert.assertEquals(JsUndefined.class, arr.get(1000).getClass());
+        Assert.assertEquals(arr, Json.parse(Json.stringify(arr)));
+        java.util.List<Integer> ints = new java.util.ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ints.add(i);
+        }
+        Assert.assertEquals(arr, DefaultWriters.seq((Writer<Integer>) JsNumber::new).write(ints));
+    }
+
+    @Test
+    public void buildersTest() {
+        JsObject.Builder builder = JsObject.builder(8)
+                .put("name", "John")
+                .put("age", 42)
+                .put("score", 1.5)
+                .put("admin", false)
+                .putNull("nothing")
+                .put("address", Json.obj($("city", "London")))
+                .putInt("missing", org.reactivecouchbase.functional.Option.<Integer>none())
+                .putAll(Json.obj($("name", "Jane")));
+        JsObject obj = builder.build();
+        Assert.assertEquals(Json.obj(
+                $("name", "Jane"),
+                $("age", 42),
+                $("score", 1.5),
+                $("admin", false),
+                $("nothing", nill()),
+                $("address", Json.obj($("city", "London")))
+        ), obj);
+        Assert.assertFalse(obj.exists("missing"));
+        try {
+            builder.put("other", 1);
+            Assert.fail("builder already built");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        JsArray arr = JsArray.builder(4).add("a").add(1).add(true).addNull().addAll(Json.arr(2, 3)).build();
+        Assert.assertEquals(Json.arr("a", 1, true, nill(), 2, 3), arr);
+        Assert.assertEquals(Json.obj($("a", 2)), Json.obj($("a", 1), null, $("a", 2)));
+    }
+
+    @Test
+    public void smallObjectsTest() {
+        JsObject small = Json.parse("{\"c\":1,\"a\":2,\"b\":3}").as(JsObject.class);
+        Assert.assertEquals("{\"c\":1,\"a\":2,\"b\":3}", Json.stringify(small));
+        Assert.assertEquals("{\"c\":1,\"a\":2,\"b\":3}", Json.stringify(Json.obj($("c", 1), $("a", 2), $("b", 3))));
+        Map<String, JsValue> fields = new HashMap<>();
+        JsObject obj = Json.obj();
+        for (int i = 0; i < 20; i++) {
+            obj = obj.with("f" + i, i);
+            fields.put("f" + i, new JsNumber(i));
+            Assert.assertEquals(new JsObject(fields), obj);
+            Assert.assertEquals(new JsObject(fields).hashCode(), obj.hashCode());
+        }
+        for (int i = 0; i < 20; i++) {
+            obj = obj.remove("f" + i);
+            fields.remove("f" + i);
+            Assert.assertEquals(new JsObject(fields), obj);
+            Assert.assertEquals(19 - i, obj.size());
+        }
+        Assert.assertEquals(Json.obj(), obj);
+        JsObject parsed = Json.parse("{\"a\":1,\"b\":2,\"c\":3,\"d\":4,\"e\":5,\"f\":6,\"g\":7,\"h\":8,\"i\":9,\"j\":10}").as(JsObject.class);
+        Assert.assertEquals(10, parsed.size());
+        Assert.assertEquals(Integer.valueOf(9), parsed.field("i").as(Integer.class));
+        Assert.assertEquals(parsed, parsed.memoize());
+        Assert.assertEquals(Json.stringify(parsed), Json.stringify(parsed.memoize()));
+    }
+
+    @Test
+    public void sharedShapesTest() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            json.append(i == 0 ? "" : ",").append("{");
+            for (int f = 0; f < 12; f++) {
+                json.append(f == 0 ? "" : ",").append("\"field").append(f).append("\":").append(i * 100 + f);
+            }
+            json.append("}");
+        }
+        JsArray rows = Json.parse(json.append("]").toString()).as(JsArray.class);
+        JsObject row = rows.get(42).as(JsObject.class);
+        Assert.assertEquals(Integer.valueOf(4211), row.field("field11").as(Integer.class));
+        Assert.assertEquals(JsUndefined.class, row.field("field12").getClass());
+        Assert.assertEquals(row, Json.parse(Json.stringify(row)));
+        Assert.assertNotEquals(row, rows.get(43));
+        JsObject edited = row.remove("field3").with("extra", "x");
+        Assert.assertEquals(12, edited.size());
+        Assert.assertFalse(edited.exists("field3"));
+        Assert.assertEquals("x", edited.field("extra").as(String.class));
+        Assert.assertEquals(Integer.valueOf(4204), edited.field("field4").as(Integer.class));
+        Assert.assertEquals(edited, edited.remove("missing"));
+        JsObject.Builder builder = JsObject.builder();
+        Map<String, JsValue> fields = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            builder.put("key" + i, i);
+            fields.put("key" + i, new JsNumber(i));
+        }
+        JsObject big = builder.build();
+        Assert.assertEquals(new JsObject(fields), big);
+        Assert.assertEquals(new JsObject(fields), Json.obj().add(big));
+        Assert.assertEquals(Integer.valueOf(39), big.field("key39").as(Integer.class));
+        // parsed rows share their shape
+        Assert.assertNotNull(Shapes.of(row));
+        Assert.assertSame(Shapes.of(row), Shapes.of(rows.get(43).as(JsObject.class)));
+        // big objects shrunk by edits get shapes that are neither shared nor cached
+        JsObject shrunk = fields("shrunk", 0, 40);
+        for (int i = 0; i < 24; i++) {
+            shrunk = shrunk.remove("shrunk" + i);
+        }
+        Assert.assertEquals(fields("shrunk", 24, 40), shrunk);
+        Assert.assertNotNull(Shapes.of(shrunk));
+        Assert.assertNotSame(Shapes.of(fields("shrunk", 24, 40)), Shapes.of(shrunk));
+        Assert.assertSame(Shapes.of(fields("shrunk", 24, 40)), Shapes.of(fields("shrunk", 24, 40)));
+        // past MAX_TRANSITIONS keys after the same shape, new keys are not shared
+        for (int i = 0; i < Shapes.MAX_TRANSITIONS; i++) {
+            Assert.assertSame(Shapes.of(pair("transitions", "key" + i)), Shapes.of(pair("transitions", "key" + i)));
+        }
+        Assert.assertNotSame(Shapes.of(pair("transitions", "extra")), Shapes.of(pair("transitions", "extra")));
+        Assert.assertSame(Shapes.of(pair("transitions", "key0")), Shapes.of(pair("transitions", "key0")));
+        // same for the first keys of the objects, past MAX_ROOT_TRANSITIONS
+        for (int i = 0; i < Shapes.MAX_ROOT_TRANSITIONS; i++) {
+            JsObject.builder().put("root" + i, i).build();
+        }
+        Assert.assertNotSame(Shapes.of(JsObject.builder().put("extraRoot", 1).build()), Shapes.of(JsObject.builder().put("extraRoot", 1).build()));
+        // past MAX_SHAPES shapes, the cache starts over : new objects stop sharing with the old ones
+        Object before = Shapes.of(pair("transitions", "key0"));
+        for (int i = 0; i <= Shapes.MAX_SHAPES / Shapes.MAX_TRANSITIONS; i++) {
+            for (int j = 0; j < Shapes.MAX_TRANSITIONS; j++) {
+                pair("root" + i, "key" + j);
+            }
+        }
+        Assert.assertNotSame(before, Shapes.of(pair("transitions", "key0")));
+        Assert.assertSame(Shapes.of(pair("transitions", "key0")), Shapes.of(pair("transitions", "key0")));
+        Assert.assertSame(Shapes.of(JsObject.builder().put("extraRoot", 1).build()), Shapes.of(JsObject.builder().put("extraRoot", 1).build()));
+    }
+
+    private static JsObject fields(String prefix, int from, int to) {
+        JsObject.Builder builder = JsObject.builder();
+        for (int i = from; i < to; i++) {
+            builder.put(prefix + i, i);
+        }
+        return builder.build();
+    }
+
+    private static JsObject pair(String first, String second) {
+        return JsObject.builder().put(first, 1).put(second, 2).build();
+    }
+
+    @Test
+    public void fieldOrderTest() {
+        // whatever the size of the object, and after edits
+        for (int size : new int[] { 10, 32, 33, 100 }) {
+            Map<String, JsValue> fields = new LinkedHashMap<>();
+            JsObject edited = Json.obj();
+            for (int i = size - 1; i >= 0; i--) {
+                fields.put("key" + i, new JsNumber(i));
+                edited = edited.with("key" + i, i);
+            }
+            String json = Json.stringify(new JsObject(fields));
+            Assert.assertEquals(json, Json.stringify(Json.parse(json)));
+            Assert.assertEquals(json, Json.stringify(edited));
+            Assert.assertEquals(json, Json.stringify(Json.obj().add(edited)));
+            fields.remove("key5");
+            fields.put("key5", new JsNumber(5));
+            fields.put("key0", new JsNumber(-1));
+            Assert.assertEquals(Json.stringify(new JsObject(fields)), Json.stringify(edited.remove("key5").with("key5", 5).with("key0", -1)));
+            Assert.assertEquals(new java.util.ArrayList<>(fields.keySet()), new java.util.ArrayList<>(Json.parse(Json.stringify(new JsObject(fields))).as(JsObject.class).fieldsSet()));
+        }
+    }
+
+    @Test
+    public void nullKeyTest() {
+        // the same whatever the size of the object
+        for (int size : new int[] { 10, 40, 100 }) {
+            JsObject obj = fields("key", 0, size);
+            Map<String, JsValue> fields = new LinkedHashMap<>(obj.values);
+            fields.put(null, new JsNumber(-1));
+            JsObject edited = obj.with(null, -1);
+            Assert.assertEquals(size + 1, edited.size());
+            Assert.assertEquals(new JsNumber(-1), edited.values.get(null));
+            Assert.assertEquals(new JsObject(fields), edited);
+            Assert.assertEquals(new java.util.ArrayList<>(fields.keySet()), new java.util.ArrayList<>(edited.fieldsSet()));
+            Assert.assertEquals(new JsNumber(-2), edited.with(null, -2).values.get(null));
+            Assert.assertEquals(size + 1, edited.with(null, -2).size());
+            Assert.assertEquals(new JsNumber(-1), edited.remove("key0").values.get(null));
+            Assert.assertEquals(size, edited.remove("key0").size());
+            JsObject.Builder builder = JsObject.builder(size + 1);
+            fields.forEach(builder::put);
+            Assert.assertEquals(edited, builder.build());
+        }
+    }
+
 
     public static class Address {
         public final String number;
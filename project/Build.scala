@@ -32,9 +32,9 @@ object ApplicationBuild extends Build {
     .settings(
       resolvers += "Typesafe repository" at "http://repo.typesafe.com/typesafe/releases/",
       resolvers += "Reactive couchbase" at "https://raw.github.com/ReactiveCouchbase/repository/master/snapshots/",
-      libraryDependencies += "com.fasterxml.jackson.core" % "jackson-core" % "2.7.1",
-      libraryDependencies += "com.fasterxml.jackson.core" % "jackson-annotations" % "2.7.1",
-      libraryDependencies += "com.fasterxml.jackson.core" % "jackson-databind" % "2.7.1",
+      libraryDependencies += "com.fasterxml.jackson.core" % "jackson-core" % "2.9.10",
+      libraryDependencies += "com.fasterxml.jackson.core" % "jackson-annotations" % "2.9.10",
+      libraryDependencies += "com.fasterxml.jackson.core" % "jackson-databind" % "2.9.10",
       libraryDependencies += "org.reactivecouchbase" % "common-lib" % "1.0-SNAPSHOT",
       libraryDependencies += "org.reactivecouchbase" % "validation-lib" % "1.0-SNAPSHOT",
       libraryDependencies += "joda-time" % "joda-time" % "2.9.2",